@@ -80,6 +80,119 @@ public class ClassesProcessor implements CodeConstants {
   }
 
   public void loadClasses(IIdentifierRenamer renamer) {
+    loadClasses(context.getClasses().values(), renamer);
+  }
+
+  /**
+   * Builds the tree of the root class of the given class without looking at the whole context, e.g. to decompile a single class on demand.
+   * The trees of the own classes it references are built as well, since they are looked up while it is decompiled, but they are not processed.
+   * The trees are built again on each call and stay in the map of root classes until they are removed with {@link #unloadClasses}.
+   *
+   * @return the classes whose trees were built, the root class of the given class first,
+   *         or an empty list if the given class is not an own class of the context
+   */
+  public List<StructClass> loadClass(String name, IIdentifierRenamer renamer) {
+    StructClass cl = context.getClass(name);
+    if (cl == null || !cl.isOwn()) {
+      return Collections.emptyList();
+    }
+
+    List<StructClass> classes = new ArrayList<>();
+    if (DecompilerContext.getOption(IFernflowerPreferences.DECOMPILE_INNER)) {
+      Set<String> visited = new HashSet<>();
+      cl = getRootClass(cl);
+      collectNestedClasses(cl, classes, visited);
+
+      Set<String> referenced = new HashSet<>();
+      for (StructClass nested : classes) {
+        DecompilationCache.collectReferences(nested, referenced);
+      }
+      for (String reference : referenced) {
+        StructClass referencedClass = context.getClass(reference);
+        if (referencedClass != null && referencedClass.isOwn()) {
+          collectNestedClasses(getRootClass(referencedClass), classes, visited);
+        }
+      }
+    }
+    else {
+      classes.add(cl);
+    }
+
+    for (StructClass loaded : classes) {
+      mapRootClasses.remove(loaded.qualifiedName);
+    }
+    loadClasses(classes, renamer);
+
+    return classes;
+  }
+
+  /**
+   * Removes the trees built by {@link #loadClass}, along with the nodes of the lambdas found while processing them.
+   */
+  public void unloadClasses(List<StructClass> classes) {
+    for (StructClass cl : classes) {
+      ClassNode node = mapRootClasses.remove(cl.qualifiedName);
+      if (node != null) {
+        for (ClassNode nested : node.nested) {
+          if (nested.type == ClassNode.CLASS_LAMBDA) {
+            mapRootClasses.remove(nested.simpleName);
+          }
+        }
+      }
+    }
+  }
+
+  private StructClass getRootClass(StructClass cl) {
+    Set<String> visited = new HashSet<>();
+    while (visited.add(cl.qualifiedName)) {
+      String enclosingName = null;
+
+      StructInnerClassesAttribute inner = cl.getAttribute(StructGeneralAttribute.ATTRIBUTE_INNER_CLASSES);
+      if (inner != null) {
+        for (StructInnerClassesAttribute.Entry entry : inner.getEntries()) {
+          if (cl.qualifiedName.equals(entry.innerName)) {
+            if (entry.outerNameIdx != 0) {
+              enclosingName = entry.enclosingName;
+            }
+            else {
+              StructEnclosingMethodAttribute attr = cl.getAttribute(StructGeneralAttribute.ATTRIBUTE_ENCLOSING_METHOD);
+              enclosingName = attr != null ? attr.getClassName() : null;
+            }
+            break;
+          }
+        }
+      }
+
+      StructClass enclosingClass = enclosingName != null ? context.getClass(enclosingName) : null;
+      if (enclosingClass == null || !enclosingClass.isOwn()) {
+        break;
+      }
+      cl = enclosingClass;
+    }
+    return cl;
+  }
+
+  private void collectNestedClasses(StructClass cl, List<StructClass> classes, Set<String> visited) {
+    if (!visited.add(cl.qualifiedName)) {
+      return;
+    }
+    classes.add(cl);
+
+    StructInnerClassesAttribute inner = cl.getAttribute(StructGeneralAttribute.ATTRIBUTE_INNER_CLASSES);
+    if (inner != null) {
+      for (StructInnerClassesAttribute.Entry entry : inner.getEntries()) {
+        String enclClassName = entry.outerNameIdx != 0 ? entry.enclosingName : cl.qualifiedName;
+        if (entry.innerName != null && cl.qualifiedName.equals(enclClassName)) {
+          StructClass nested = context.getClass(entry.innerName);
+          if (nested != null && nested.isOwn()) {
+            collectNestedClasses(nested, classes, visited);
+          }
+        }
+      }
+    }
+  }
+
+  private void loadClasses(Collection<StructClass> classes, IIdentifierRenamer renamer) {
     Map<String, Inner> mapInnerClasses = new HashMap<>();
     Map<String, Set<String>> mapNestedClassReferences = new HashMap<>();
     Map<String, Set<String>> mapEnclosingClassReferences = new HashMap<>();
@@ -89,7 +202,7 @@ public class ClassesProcessor implements CodeConstants {
     boolean verifyAnonymousClasses = DecompilerContext.getOption(IFernflowerPreferences.VERIFY_ANONYMOUS_CLASSES);
 
     // create class nodes
-    for (StructClass cl : context.getClasses().values()) {
+    for (StructClass cl : classes) {
       if (cl.isOwn() && !mapRootClasses.containsKey(cl.qualifiedName)) {
         if (bDecompileInner) {
           StructInnerClassesAttribute inner = cl.getAttribute(StructGeneralAttribute.ATTRIBUTE_INNER_CLASSES);
@@ -470,6 +583,29 @@ public class ClassesProcessor implements CodeConstants {
     }
   }
 
+  /**
+   * Releases what was read and computed for the given root class and its nested classes once it is written.
+   * The class tree itself is kept, since other classes look their references up in it.
+   */
+  public void releaseClass(StructClass cl) {
+    ClassNode root = mapRootClasses.get(cl.qualifiedName);
+    if (root != null && root.type == ClassNode.CLASS_ROOT) {
+      releaseNode(root);
+    }
+  }
+
+  private static void releaseNode(ClassNode node) {
+    if (node.type != ClassNode.CLASS_LAMBDA) {
+      node.classStruct.releaseBody();
+    }
+    node.superInvocation = null;
+    node.mapFieldsToVars.clear();
+
+    for (ClassNode nd : node.nested) {
+      releaseNode(nd);
+    }
+  }
+
   public Map<String, ClassNode> getMapRootClasses() {
     return mapRootClasses;
   }
@@ -0,0 +1,386 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package org.jetbrains.java.decompiler.main;
+
+import org.jetbrains.java.decompiler.code.CodeConstants;
+import org.jetbrains.java.decompiler.main.ClassesProcessor.ClassNode;
+import org.jetbrains.java.decompiler.main.extern.IFernflowerLogger;
+import org.jetbrains.java.decompiler.main.extern.IFernflowerPreferences;
+import org.jetbrains.java.decompiler.struct.StructClass;
+import org.jetbrains.java.decompiler.struct.StructContext;
+import org.jetbrains.java.decompiler.struct.consts.ConstantPool;
+import org.jetbrains.java.decompiler.struct.consts.PooledConstant;
+import org.jetbrains.java.decompiler.struct.consts.PrimitiveConstant;
+
+import java.io.*;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * On-disk cache of decompiled root classes, so that classes which did not change since an earlier run are not decompiled again.
+ *
+ * An entry is keyed by a SHA-256 hash over everything the output of a root class depends on: the bytes of the root and its nested classes,
+ * the parameter names loaded for their abstract methods, the options, the engine version and a hash of the engine's own code,
+ * the bytes of every class referenced from their constant pools together with the hierarchy of those classes,
+ * and the class names present in the root's package (which decide how imports are written).
+ * The value is the source text and, when {@link IFernflowerPreferences#BYTECODE_SOURCE_MAPPING} is on, the line mapping.
+ *
+ * Failing to read or write an entry is logged and treated as a miss.
+ * The cache is not used with {@link IFernflowerPreferences#RENAME_ENTITIES}, as renamed identifiers depend on all classes processed before.
+ */
+public class DecompilationCache {
+  private static final int MAGIC = 0x46464443;  // "FFDC"
+  private static final int FORMAT_VERSION = 1;
+
+  // options which don't change the output
+  private static final Set<String> IGNORED_OPTIONS = new HashSet<>(Arrays.asList(
+    IFernflowerPreferences.THREADS, IFernflowerPreferences.LOG_LEVEL, IFernflowerPreferences.CACHE_DIRECTORY,
+    IFernflowerPreferences.COMPRESSION_LEVEL, IFernflowerPreferences.LOW_MEMORY, IFernflowerPreferences.PARALLEL_METHODS));
+
+  // class names in descriptors and signatures
+  private static final Pattern CLASS_NAME = Pattern.compile("L([^;<>.\\[()]+)[;<]");
+
+  private static String engineHash;
+
+  private final File directory;
+  private final byte[] prefix;
+  private final Map<StructClass, byte[]> classHashes = new ConcurrentHashMap<>();
+  private final Map<String, byte[]> packageHashes = new ConcurrentHashMap<>();
+
+  public DecompilationCache(File directory, Map<String, Object> properties, IFernflowerLogger logger) {
+    this.directory = directory;
+    this.prefix = (FORMAT_VERSION + "\n" + getEngineKey(properties, logger)).getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * @return a text naming the engine version, its code and the options which change the output
+   */
+  static String getEngineKey(Map<String, Object> properties, IFernflowerLogger logger) {
+    StringBuilder key = new StringBuilder();
+    key.append(getEngineVersion()).append('\n');
+    key.append(getEngineHash(logger)).append('\n');
+    for (Map.Entry<String, Object> entry : new TreeMap<>(properties).entrySet()) {
+      if (!IGNORED_OPTIONS.contains(entry.getKey())) {
+        Object value = entry.getValue();
+        key.append(entry.getKey()).append('=').append(value instanceof String ? value : value.getClass().getName()).append('\n');
+      }
+    }
+    return key.toString();
+  }
+
+  private static String getEngineVersion() {
+    Package pkg = DecompilationCache.class.getPackage();
+    String version = pkg == null ? null : pkg.getImplementationVersion();
+    return version == null ? "dev" : version;
+  }
+
+  // builds between two releases share a version and unpackaged builds have none, so the code itself is part of the key
+  private static synchronized String getEngineHash(IFernflowerLogger logger) {
+    if (engineHash == null) {
+      try {
+        CodeSource source = DecompilationCache.class.getProtectionDomain().getCodeSource();
+        if (source == null || source.getLocation() == null) {
+          throw new IOException("Unknown code location");
+        }
+        File location = new File(source.getLocation().toURI());
+        MessageDigest digest = newDigest();
+        if (location.isDirectory()) {
+          addDirectory(location, "", digest);
+        }
+        else {
+          addFile(location, digest);
+        }
+        engineHash = toHex(digest.digest());
+      }
+      catch (IOException | URISyntaxException | IllegalArgumentException | SecurityException ex) {
+        // a key no other run can produce
+        logger.writeMessage("Cannot hash the decompiler code, cached classes will not be reused", IFernflowerLogger.Severity.WARN, ex);
+        engineHash = UUID.randomUUID().toString();
+      }
+    }
+    return engineHash;
+  }
+
+  private static void addDirectory(File directory, String path, MessageDigest digest) throws IOException {
+    File[] files = directory.listFiles();
+    if (files == null) {
+      throw new IOException("Cannot list " + directory);
+    }
+    Arrays.sort(files);
+    for (File file : files) {
+      String name = path + '/' + file.getName();
+      if (file.isDirectory()) {
+        addDirectory(file, name, digest);
+      }
+      else {
+        digest.update(name.getBytes(StandardCharsets.UTF_8));
+        addFile(file, digest);
+      }
+    }
+  }
+
+  private static void addFile(File file, MessageDigest digest) throws IOException {
+    try (InputStream in = new FileInputStream(file)) {
+      byte[] buffer = new byte[16384];
+      int length;
+      while ((length = in.read(buffer)) > 0) {
+        digest.update(buffer, 0, length);
+      }
+    }
+  }
+
+  public static class Entry {
+    public final String content;
+    public final int[] mapping;
+
+    public Entry(String content, int[] mapping) {
+      this.content = content;
+      this.mapping = mapping;
+    }
+  }
+
+  /**
+   * @return the key of the given root class, or null if it is not a root class and hence has no output of its own
+   */
+  public String getKey(StructClass cl) throws IOException {
+    ClassNode root = DecompilerContext.getClassProcessor().getMapRootClasses().get(cl.qualifiedName);
+    if (root == null || root.type != ClassNode.CLASS_ROOT) {
+      return null;
+    }
+
+    StructContext context = DecompilerContext.getStructContext();
+    MessageDigest digest = newDigest();
+    digest.update(prefix);
+
+    // the classes written to this file
+    Set<String> written = new HashSet<>();
+    Set<String> referenced = new TreeSet<>();
+    addNode(context, root, digest, written, referenced);
+
+    // the classes they depend on, and their hierarchy
+    addSuperTypes(context, referenced);
+
+    for (String name : referenced) {
+      if (!written.contains(name)) {
+        digest.update(name.getBytes(StandardCharsets.UTF_8));
+        StructClass ref = context.getClass(name);
+        digest.update(ref == null ? new byte[1] : getClassHash(ref));
+      }
+    }
+
+    // names in the same and in the default package may turn an import into a qualified name
+    String name = cl.qualifiedName;
+    digest.update(getPackageHash(context, name.substring(0, Math.max(0, name.lastIndexOf('/')))));
+    digest.update(getPackageHash(context, ""));
+
+    return toHex(digest.digest());
+  }
+
+  private void addNode(StructContext context, ClassNode node, MessageDigest digest, Set<String> written, Set<String> referenced)
+    throws IOException {
+    if (node.type != ClassNode.CLASS_LAMBDA) {
+      StructClass cl = node.classStruct;
+      written.add(cl.qualifiedName);
+      digest.update(cl.qualifiedName.getBytes(StandardCharsets.UTF_8));
+      digest.update(getClassHash(cl));
+      for (Map.Entry<String, List<String>> entry : new TreeMap<>(context.getAbstractNames(cl.qualifiedName)).entrySet()) {
+        digest.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+        digest.update(entry.getValue().toString().getBytes(StandardCharsets.UTF_8));
+      }
+      collectReferences(cl, referenced);
+    }
+
+    for (ClassNode nested : node.nested) {
+      addNode(context, nested, digest, written, referenced);
+    }
+  }
+
+  static void collectReferences(StructClass cl, Set<String> referenced) {
+    // not getPool(), which would keep the pool of a class that may not be decompiled at all
+    ConstantPool pool = cl.getLoader().loadPool(cl.qualifiedName);
+    for (int i = 1; i < pool.size(); i++) {
+      PooledConstant constant = pool.getConstant(i);
+      if (constant != null) {
+        if (constant.type == CodeConstants.CONSTANT_Class) {
+          PrimitiveConstant cn = pool.getPrimitiveConstant(i);  // renamed, as in the context
+          if (!cn.isArray) {
+            referenced.add(cn.getString());
+          }
+          else {
+            addClassNames(cn.getString(), referenced);
+          }
+        }
+        else if (constant.type == CodeConstants.CONSTANT_Utf8) {
+          addClassNames(((PrimitiveConstant)constant).getString(), referenced);
+        }
+      }
+    }
+  }
+
+  /**
+   * Adds the super classes and interfaces of the given classes, and theirs, to the set.
+   */
+  static void addSuperTypes(StructContext context, Set<String> classes) {
+    Deque<String> queue = new ArrayDeque<>(classes);
+    while (!queue.isEmpty()) {
+      StructClass cl = context.getClass(queue.removeFirst());
+      if (cl != null) {
+        if (cl.superClass != null && classes.add(cl.superClass.getString())) {
+          queue.add(cl.superClass.getString());
+        }
+        for (String name : cl.getInterfaceNames()) {
+          if (classes.add(name)) {
+            queue.add(name);
+          }
+        }
+      }
+    }
+  }
+
+  private static void addClassNames(String descriptor, Set<String> referenced) {
+    if (descriptor.indexOf(';') >= 0) {
+      Matcher matcher = CLASS_NAME.matcher(descriptor);
+      while (matcher.find()) {
+        referenced.add(matcher.group(1));
+      }
+    }
+  }
+
+  private byte[] getClassHash(StructClass cl) throws IOException {
+    byte[] hash = classHashes.get(cl);
+    if (hash == null) {
+      byte[] bytes = cl.getLoader().getClassBytes(cl.qualifiedName);
+      hash = bytes == null ? new byte[1] : newDigest().digest(bytes);
+      classHashes.put(cl, hash);
+    }
+    return hash;
+  }
+
+  private byte[] getPackageHash(StructContext context, String packageName) {
+    return packageHashes.computeIfAbsent(packageName, pkg -> {
+      List<String> names = new ArrayList<>();
+      for (String name : context.getClasses().keySet()) {
+        int slash = name.lastIndexOf('/');
+        if (pkg.equals(slash < 0 ? "" : name.substring(0, slash))) {
+          names.add(name);
+        }
+      }
+      Collections.sort(names);
+
+      MessageDigest digest = newDigest();
+      for (String name : names) {
+        digest.update(name.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte)'\n');
+      }
+      return digest.digest();
+    });
+  }
+
+  public Entry load(String key) {
+    File file = getFile(key);
+    if (!file.isFile()) {
+      return null;
+    }
+
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+        return null;
+      }
+
+      int[] mapping = null;
+      int length = in.readInt();
+      if (length >= 0) {
+        mapping = new int[length];
+        for (int i = 0; i < length; i++) {
+          mapping[i] = in.readInt();
+        }
+      }
+
+      byte[] content = new byte[in.readInt()];
+      in.readFully(content);
+
+      return new Entry(new String(content, StandardCharsets.UTF_8), mapping);
+    }
+    catch (IOException ex) {
+      DecompilerContext.getLogger().writeMessage("Cannot read cached class " + file, IFernflowerLogger.Severity.WARN, ex);
+      return null;
+    }
+  }
+
+  public void save(String key, String content, int[] mapping) {
+    File file = getFile(key);
+    File temp = new File(file.getPath() + '.' + Thread.currentThread().getId() + ".tmp");
+
+    try {
+      File parent = file.getParentFile();
+      if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+        throw new IOException("Cannot create directory " + parent);
+      }
+
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+
+        if (mapping == null) {
+          out.writeInt(-1);
+        }
+        else {
+          out.writeInt(mapping.length);
+          for (int line : mapping) {
+            out.writeInt(line);
+          }
+        }
+
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+      }
+
+      // readers either see no entry or a complete one
+      try {
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+      }
+      catch (AtomicMoveNotSupportedException ex) {
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    }
+    catch (IOException ex) {
+      DecompilerContext.getLogger().writeMessage("Cannot write cached class " + file, IFernflowerLogger.Severity.WARN, ex);
+      temp.delete();
+    }
+  }
+
+  private File getFile(String key) {
+    return new File(new File(directory, key.substring(0, 2)), key.substring(2));
+  }
+
+  static String sha256(byte[] data) {
+    return toHex(newDigest().digest(data));
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    }
+    catch (NoSuchAlgorithmException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  private static String toHex(byte[] bytes) {
+    StringBuilder buffer = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      buffer.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return buffer.toString();
+  }
+}
@@ -67,6 +67,7 @@ public class DecompilerContext {
     this.poolInterceptor = other.poolInterceptor;
     this.renamerFactory = other.renamerFactory;
     this.threads = other.threads;
+    this.counterContainer = new CounterContainer();
   }
 
   // *****************************************************************************
@@ -103,9 +104,25 @@ public class DecompilerContext {
   }
 
   public static void startMethod(VarProcessor varProcessor) {
+    startMethod(varProcessor, new CounterContainer());
+  }
+
+  public static void startMethod(VarProcessor varProcessor, CounterContainer counterContainer) {
     DecompilerContext context = getCurrentContext();
     context.varProcessor = varProcessor;
-    context.counterContainer = new CounterContainer();
+    context.counterContainer = counterContainer;
+  }
+
+  /**
+   * Creates a context for decompiling a method of the current class on another thread. It shares everything
+   * with the current context but the properties, the method state and the import collector.
+   */
+  public static DecompilerContext forkMethodContext(ImportCollector importCollector) {
+    DecompilerContext current = getCurrentContext();
+    DecompilerContext context = new DecompilerContext(current);
+    context.importCollector = importCollector;
+    context.bytecodeSourceMapper = current.bytecodeSourceMapper;
+    return context;
   }
 
   // *****************************************************************************
@@ -6,6 +6,7 @@ import org.jetbrains.java.decompiler.main.extern.*;
 import org.jetbrains.java.decompiler.modules.renamer.ConverterHelper;
 import org.jetbrains.java.decompiler.modules.renamer.IdentifierConverter;
 import org.jetbrains.java.decompiler.modules.renamer.PoolInterceptor;
+import org.jetbrains.java.decompiler.struct.ContextUnit;
 import org.jetbrains.java.decompiler.struct.IDecompiledData;
 import org.jetbrains.java.decompiler.struct.StructClass;
 import org.jetbrains.java.decompiler.struct.StructContext;
@@ -15,7 +16,9 @@ import org.jetbrains.java.decompiler.util.TextBuffer;
 import org.jetbrains.java.decompiler.util.ClasspathScanner;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 
@@ -24,17 +27,32 @@ public class Fernflower implements IDecompiledData {
   private final ClassesProcessor classProcessor;
   private final IIdentifierRenamer helper;
   private final IdentifierConverter converter;
+  private final DecompilationCache cache;
+  private final List<IncrementalHelper> incrementalSources = new ArrayList<>();
+  private final Map<String, Object> properties;
+  private String engineKey;
 
   public Fernflower(IBytecodeProvider provider, IResultSaver saver, Map<String, Object> customProperties, IFernflowerLogger logger) {
     this(provider, saver, customProperties, logger, 0);
   }
 
   public Fernflower(IBytecodeProvider provider, IResultSaver saver, Map<String, Object> customProperties, IFernflowerLogger logger, int threads) {
+    this(provider, saver, customProperties, logger, threads, null);
+  }
+
+  /**
+   * @param libraries a context whose library classes are shared with this one instead of being loaded again, e.g. by a decompiler
+   *                  which keeps running between requests. It has to be created with the same options.
+   */
+  public Fernflower(IBytecodeProvider provider, IResultSaver saver, Map<String, Object> customProperties, IFernflowerLogger logger, int threads,
+                    StructContext libraries) {
     Map<String, Object> properties = new HashMap<>(IFernflowerPreferences.DEFAULTS);
     if (customProperties != null) {
       properties.putAll(customProperties);
     }
 
+    this.properties = new HashMap<>(properties);  // without what is set while decompiling
+
     String level = (String)properties.get(IFernflowerPreferences.LOG_LEVEL);
     if (level != null) {
       try {
@@ -43,7 +61,23 @@ public class Fernflower implements IDecompiledData {
       catch (IllegalArgumentException ignore) { }
     }
 
+    String cacheDirectory = (String)properties.get(IFernflowerPreferences.CACHE_DIRECTORY);
+    if (cacheDirectory == null || cacheDirectory.isEmpty()) {
+      cache = null;
+    }
+    else if ("1".equals(properties.get(IFernflowerPreferences.RENAME_ENTITIES))) {
+      // renamed identifiers are numbered over all classes, so the output of a class depends on more than its key
+      logger.writeMessage("The decompilation cache is not supported with renaming", IFernflowerLogger.Severity.WARN);
+      cache = null;
+    }
+    else {
+      cache = new DecompilationCache(new File(cacheDirectory), properties, logger);
+    }
+
     structContext = new StructContext(saver, this, new LazyLoader(provider));
+    if (libraries != null) {
+      structContext.addLibraries(libraries);
+    }
     classProcessor = new ClassesProcessor(structContext);
 
     PoolInterceptor interceptor = null;
@@ -82,7 +116,7 @@ public class Fernflower implements IDecompiledData {
     String jvmVersion = System.getProperty("java.vm.version", "missing jvm version");
     logger.writeMessage(String.format("JVM info: %s - %s - %s", vendor, javaVersion, jvmVersion), IFernflowerLogger.Severity.INFO);
 
-    if (DecompilerContext.getOption(IFernflowerPreferences.INCLUDE_ENTIRE_CLASSPATH)) {
+    if (libraries == null && DecompilerContext.getOption(IFernflowerPreferences.INCLUDE_ENTIRE_CLASSPATH)) {
       ClasspathScanner.addAllClasspath(structContext);
     }
   }
@@ -105,6 +139,15 @@ public class Fernflower implements IDecompiledData {
     structContext.addSpace(source, true);
   }
 
+  /**
+   * Adds a source archive which is decompiled incrementally: the output of classes which cannot have changed since the given previous
+   * version of the archive is copied from the output of that version.
+   */
+  public void addSource(File source, File previousSource, File previousOutput) {
+    structContext.addSpace(source, true);
+    incrementalSources.add(new IncrementalHelper(source, previousSource, previousOutput));
+  }
+
   public void addLibrary(File library) {
     structContext.addSpace(library, false);
   }
@@ -116,9 +159,50 @@ public class Fernflower implements IDecompiledData {
 
     classProcessor.loadClasses(helper);
 
+    if (!incrementalSources.isEmpty()) {
+      if (converter != null) {
+        DecompilerContext.getLogger().writeMessage("Incremental mode is not supported with renaming", IFernflowerLogger.Severity.WARN);
+      }
+      else {
+        for (IncrementalHelper source : incrementalSources) {
+          source.prepare(structContext, classProcessor, getEngineKey());
+        }
+      }
+    }
+
     structContext.saveContext();
   }
 
+  /**
+   * Decompiles a single class of the sources on demand. Only the trees of its root class and of the classes it references are built,
+   * so the time taken depends on the size of that class rather than on the size of the context. The trees are removed again afterwards.
+   *
+   * @param qualifiedName the internal name of the class, or of one of its nested classes
+   * @return the source of the root class, or null if it is not a class of the sources or could not be decompiled
+   */
+  public String decompileClass(String qualifiedName) {
+    if (converter != null) {
+      DecompilerContext.getLogger().writeMessage("Decompiling a single class is not supported with renaming", IFernflowerLogger.Severity.WARN);
+      return null;
+    }
+
+    List<StructClass> classes = classProcessor.loadClass(qualifiedName, helper);
+    try {
+      ClassNode root = classes.isEmpty() ? null : classProcessor.getMapRootClasses().get(classes.get(0).qualifiedName);
+      if (root == null || !processClass(root.classStruct)) {
+        return null;
+      }
+      return getClassContent(root.classStruct);
+    }
+    finally {
+      classProcessor.unloadClasses(classes);
+    }
+  }
+
+  public StructContext getStructContext() {
+    return structContext;
+  }
+
   public void addWhitelist(String prefix) {
     classProcessor.addWhitelist(prefix);
   }
@@ -142,6 +226,38 @@ public class Fernflower implements IDecompiledData {
     }
   }
 
+  @Override
+  public long getClassCost(StructClass cl) {
+    ClassNode node = classProcessor.getMapRootClasses().get(cl.qualifiedName);
+    return node == null ? IDecompiledData.super.getClassCost(cl) : getClassCost(node);
+  }
+
+  private long getClassCost(ClassNode node) {
+    long cost = node.type == ClassNode.CLASS_LAMBDA ? 0 : IDecompiledData.super.getClassCost(node.classStruct);
+    for (ClassNode nested : node.nested) {
+      cost += getClassCost(nested);
+    }
+    return cost;
+  }
+
+  @Override
+  public DecompilationCache getCache() {
+    return cache;
+  }
+
+  @Override
+  public String getOutputRecord(ContextUnit unit) {
+    // renamed output is never reused
+    return converter != null ? null : IncrementalHelper.createRecord(unit, structContext, getEngineKey());
+  }
+
+  private String getEngineKey() {
+    if (engineKey == null) {
+      engineKey = DecompilationCache.getEngineKey(properties, DecompilerContext.getLogger());
+    }
+    return engineKey;
+  }
+
   @Override
   public boolean processClass(StructClass cl) {
     try {
@@ -155,11 +271,22 @@ public class Fernflower implements IDecompiledData {
 
   @Override
   public String getClassContent(StructClass cl) {
+    TextBuffer buffer = getClassBuffer(cl);
+    return buffer == null ? null : buffer.toString();
+  }
+
+  @Override
+  public void releaseClass(StructClass cl) {
+    classProcessor.releaseClass(cl);
+  }
+
+  @Override
+  public TextBuffer getClassBuffer(StructClass cl) {
     try {
       TextBuffer buffer = new TextBuffer(ClassesProcessor.AVERAGE_CLASS_SIZE);
       buffer.append(DecompilerContext.getProperty(IFernflowerPreferences.BANNER).toString());
       classProcessor.writeClass(cl, buffer);
-      return buffer.toString();
+      return buffer;
     }
     catch (Throwable t) {
       DecompilerContext.getLogger().writeMessage("Class " + cl.qualifiedName + " couldn't be fully decompiled.", t);
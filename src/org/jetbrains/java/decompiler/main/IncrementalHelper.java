@@ -0,0 +1,263 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package org.jetbrains.java.decompiler.main;
+
+import org.jetbrains.java.decompiler.main.ClassesProcessor.ClassNode;
+import org.jetbrains.java.decompiler.main.extern.IFernflowerLogger;
+import org.jetbrains.java.decompiler.struct.ContextUnit;
+import org.jetbrains.java.decompiler.struct.StructClass;
+import org.jetbrains.java.decompiler.struct.StructContext;
+import org.jetbrains.java.decompiler.struct.consts.ConstantPool;
+import org.jetbrains.java.decompiler.struct.consts.PrimitiveConstant;
+import org.jetbrains.java.decompiler.util.DataInputFullStream;
+import org.jetbrains.java.decompiler.util.InterpreterUtil;
+import org.jetbrains.java.decompiler.util.ZipArchiveReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Incremental decompilation of a new version of an archive. Root classes whose output cannot differ from the output of the previous version
+ * are copied from the previous output archive instead of being decompiled again.
+ *
+ * A root class is decompiled again when
+ * <ul>
+ *   <li>the bytes of the class or of one of its nested classes changed,</li>
+ *   <li>a class it references, or one of the super types of such a class, was changed, added or removed,
+ *   in the archive or outside of it,</li>
+ *   <li>a class was added to or removed from its package or the default package, which may change how imports are written.</li>
+ * </ul>
+ *
+ * Every output archive has a {@link #RECORD_ENTRY} with a hash of the engine and the options it was decompiled with,
+ * and the hash of every class outside the archive which its classes reference. The whole archive is decompiled again
+ * when the previous output has no such record or was made by another engine or with other options.
+ */
+public class IncrementalHelper {
+  public static final String RECORD_ENTRY = "META-INF/fernflower-incremental.txt";
+  private static final String ENGINE = "engine ";
+  private static final String MISSING = "-";
+
+  private final File source;
+  private final File previousSource;
+  private final File previousOutput;
+
+  public IncrementalHelper(File source, File previousSource, File previousOutput) {
+    this.source = source;
+    this.previousSource = previousSource;
+    this.previousOutput = previousOutput;
+  }
+
+  public void prepare(StructContext context, ClassesProcessor classProcessor, String engineKey) {
+    ContextUnit unit = context.getArchiveUnit(source);
+    if (unit == null) {
+      DecompilerContext.getLogger().writeMessage("Incremental mode needs an archive, decompiling " + source + " in full", IFernflowerLogger.Severity.WARN);
+      return;
+    }
+
+    try {
+      Set<String> previousEntries = new HashSet<>();
+      try (ZipArchiveReader archive = new ZipArchiveReader(previousOutput)) {
+        for (ZipArchiveReader.Entry entry : archive.getEntries()) {
+          previousEntries.add(entry.name);
+        }
+      }
+
+      List<String> record = previousEntries.contains(RECORD_ENTRY) ? readRecord() : Collections.emptyList();
+      if (record.isEmpty() || !record.get(0).equals(ENGINE + DecompilationCache.sha256(engineKey.getBytes(StandardCharsets.UTF_8)))) {
+        DecompilerContext.getLogger().writeMessage(
+          previousOutput + " was decompiled by another engine or with other options, decompiling " + source + " in full",
+          IFernflowerLogger.Severity.INFO);
+        return;
+      }
+
+      // classes outside of the archive which changed since the previous output
+      Set<String> changedReferences = new HashSet<>();
+      for (String line : record.subList(1, record.size())) {
+        int space = line.lastIndexOf(' ');
+        if (space > 0) {
+          String name = line.substring(0, space);
+          if (!line.substring(space + 1).equals(getClassHash(context, name))) {
+            changedReferences.add(name);
+          }
+        }
+      }
+
+      Set<String> unchanged = getUnchangedClasses(context, classProcessor, unit, changedReferences);
+      DecompilerContext.getLogger().writeMessage(
+        "Reusing the previous output of " + unchanged.size() + " classes of " + source, IFernflowerLogger.Severity.INFO);
+
+      unit.setPreviousOutput(previousOutput.getAbsolutePath(), previousEntries, unchanged);
+    }
+    catch (IOException ex) {
+      DecompilerContext.getLogger().writeMessage("Cannot compare " + source + " with " + previousSource + ", decompiling it in full", ex);
+    }
+  }
+
+  private List<String> readRecord() throws IOException {
+    try (ZipFile archive = new ZipFile(previousOutput)) {
+      ZipEntry entry = archive.getEntry(RECORD_ENTRY);
+      return Arrays.asList(new String(InterpreterUtil.getBytes(archive, entry), StandardCharsets.UTF_8).split("\n"));
+    }
+  }
+
+  /**
+   * @return the text of the {@link #RECORD_ENTRY} of the output archive of the given unit, or null if the classes it references
+   * cannot be read
+   */
+  public static String createRecord(ContextUnit unit, StructContext context, String engineKey) {
+    Set<String> unitClasses = new HashSet<>();
+    Set<String> referenced = new TreeSet<>();
+    for (StructClass cl : unit.getClasses()) {
+      unitClasses.add(cl.qualifiedName);
+      DecompilationCache.collectReferences(cl, referenced);
+    }
+    DecompilationCache.addSuperTypes(context, referenced);
+
+    StringBuilder record = new StringBuilder();
+    record.append(ENGINE).append(DecompilationCache.sha256(engineKey.getBytes(StandardCharsets.UTF_8))).append('\n');
+    try {
+      for (String name : referenced) {
+        if (!unitClasses.contains(name)) {
+          record.append(name).append(' ').append(getClassHash(context, name)).append('\n');
+        }
+      }
+    }
+    catch (IOException ex) {
+      DecompilerContext.getLogger().writeMessage("Cannot read the classes referenced from an archive, it has no record for incremental runs",
+                                                 IFernflowerLogger.Severity.WARN, ex);
+      return null;
+    }
+    return record.toString();
+  }
+
+  private static String getClassHash(StructContext context, String name) throws IOException {
+    StructClass cl = context.getClass(name);
+    byte[] bytes = cl == null ? null : cl.getLoader().getClassBytes(name);
+    return bytes == null ? MISSING : DecompilationCache.sha256(bytes);
+  }
+
+  private Set<String> getUnchangedClasses(StructContext context, ClassesProcessor classProcessor, ContextUnit unit,
+                                          Set<String> changedReferences) throws IOException {
+    Set<String> changed = new HashSet<>(changedReferences);
+    Set<String> changedPackages = new HashSet<>();  // packages where classes were added or removed
+
+    List<StructClass> classes = unit.getClasses();
+    List<String> classEntries = unit.getClassEntries();
+    try (ZipFile archive = new ZipFile(previousSource)) {
+      for (int i = 0; i < classes.size(); i++) {
+        StructClass cl = classes.get(i);
+        ZipEntry entry = archive.getEntry(classEntries.get(i));
+        if (entry == null) {
+          changed.add(cl.qualifiedName);
+          changedPackages.add(getPackage(cl.qualifiedName));
+        }
+        else {
+          byte[] bytes = cl.getLoader().getClassBytes(cl.qualifiedName);
+          byte[] previousBytes = InterpreterUtil.getBytes(archive, entry);
+          if (!Arrays.equals(previousBytes, bytes)) {
+            changed.add(cl.qualifiedName);
+
+            String previousName = getClassName(previousBytes);
+            if (!previousName.equals(cl.qualifiedName)) {
+              changed.add(previousName);
+              changedPackages.add(getPackage(previousName));
+              changedPackages.add(getPackage(cl.qualifiedName));
+            }
+          }
+        }
+      }
+
+      Set<String> current = new HashSet<>(classEntries);
+      Enumeration<? extends ZipEntry> entries = archive.entries();
+      while (entries.hasMoreElements()) {
+        ZipEntry entry = entries.nextElement();
+        if (entry.getName().endsWith(".class") && !current.contains(entry.getName())) {
+          String removed = getClassName(InterpreterUtil.getBytes(archive, entry));
+          changed.add(removed);
+          changedPackages.add(getPackage(removed));
+        }
+      }
+    }
+
+    Set<String> unitClasses = new HashSet<>();
+    for (StructClass cl : classes) {
+      unitClasses.add(cl.qualifiedName);
+    }
+
+    Map<String, Boolean> affected = new HashMap<>();
+    Set<String> unchanged = new HashSet<>();
+    for (ClassNode root : classProcessor.getMapRootClasses().values()) {
+      String name = root.classStruct.qualifiedName;
+      if (root.type != ClassNode.CLASS_ROOT || !unitClasses.contains(name) ||
+          changedPackages.contains(getPackage(name)) || changedPackages.contains("")) {
+        continue;
+      }
+
+      Set<String> tree = new HashSet<>();
+      Set<String> referenced = new HashSet<>();
+      collectTree(root, tree, referenced);
+
+      boolean dirty = false;
+      for (String cl : tree) {
+        dirty |= changed.contains(cl);
+      }
+      for (String cl : referenced) {
+        dirty = dirty || isAffected(cl, context, changed, affected);
+      }
+
+      if (!dirty) {
+        unchanged.add(name);
+      }
+    }
+
+    return unchanged;
+  }
+
+  private static void collectTree(ClassNode node, Set<String> tree, Set<String> referenced) {
+    if (node.type != ClassNode.CLASS_LAMBDA) {
+      tree.add(node.classStruct.qualifiedName);
+      DecompilationCache.collectReferences(node.classStruct, referenced);
+    }
+    for (ClassNode nested : node.nested) {
+      collectTree(nested, tree, referenced);
+    }
+  }
+
+  private static boolean isAffected(String name, StructContext context, Set<String> changed, Map<String, Boolean> affected) {
+    Boolean result = affected.get(name);
+    if (result == null) {
+      affected.put(name, Boolean.FALSE);  // guards against cycles in broken hierarchies
+
+      boolean value = changed.contains(name);
+      StructClass cl = context.getClass(name);
+      if (!value && cl != null) {
+        if (cl.superClass != null) {
+          value = isAffected(cl.superClass.getString(), context, changed, affected);
+        }
+        for (String intf : cl.getInterfaceNames()) {
+          value = value || isAffected(intf, context, changed, affected);
+        }
+      }
+
+      result = value;
+      affected.put(name, result);
+    }
+    return result;
+  }
+
+  private static String getClassName(byte[] bytes) throws IOException {
+    DataInputFullStream in = new DataInputFullStream(bytes);
+    in.discard(8);
+    ConstantPool pool = new ConstantPool(in);
+    in.discard(2);
+    return ((PrimitiveConstant)pool.getConstant(in.readUnsignedShort())).getString();
+  }
+
+  private static String getPackage(String name) {
+    int index = name.lastIndexOf('/');
+    return index < 0 ? "" : name.substring(0, index);
+  }
+}
@@ -23,6 +23,8 @@ public class ImportCollector {
   private final Set<String> setInnerClassNames = new HashSet<>();
   private final String currentPackageSlash;
   private final String currentPackagePoint;
+  // names looked up through a fork, in the order of the lookups
+  private final List<Lookup> lookups;
 
   public ImportCollector(ClassNode root) {
     String clName = root.classStruct.qualifiedName;
@@ -36,6 +38,7 @@ public class ImportCollector {
       currentPackageSlash = "";
       currentPackagePoint = "";
     }
+    lookups = null;
 
     Map<String, StructClass> classes = DecompilerContext.getStructContext().getClasses();
     LinkedList<String> queue = new LinkedList<>();
@@ -70,6 +73,37 @@ public class ImportCollector {
     }
   }
 
+  private ImportCollector(ImportCollector parent) {
+    mapSimpleNames.putAll(parent.mapSimpleNames);
+    setNotImportedNames.addAll(parent.setNotImportedNames);
+    setFieldNames.addAll(parent.setFieldNames);
+    setInnerClassNames.addAll(parent.setInnerClassNames);
+    currentPackageSlash = parent.currentPackageSlash;
+    currentPackagePoint = parent.currentPackagePoint;
+    lookups = new ArrayList<>();
+  }
+
+  /**
+   * Creates a copy of this collector for a method decompiled on another thread. The names the method looks up
+   * are recorded, so that they can be registered here in a fixed order with {@link #replay(ImportCollector)}.
+   */
+  public ImportCollector fork() {
+    return new ImportCollector(this);
+  }
+
+  /**
+   * Looks up the names recorded by a fork of this collector again, in their original order.
+   * @return false if one of the names is not resolved the way it was in the fork, i.e. the method has to be decompiled again
+   */
+  public boolean replay(ImportCollector fork) {
+    for (Lookup lookup : fork.lookups) {
+      if (!lookup.shortName.equals(getShortName(lookup.fullName, lookup.imported))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   /**
    * Check whether the package-less name ClassName is shaded by variable in a context of
    * the decompiled class
@@ -91,6 +125,14 @@ public class ImportCollector {
   }
 
   public String getShortName(String fullName, boolean imported) {
+    String shortName = resolveShortName(fullName, imported);
+    if (lookups != null) {
+      lookups.add(new Lookup(fullName, imported, shortName));
+    }
+    return shortName;
+  }
+
+  private String resolveShortName(String fullName, boolean imported) {
     ClassNode node = DecompilerContext.getClassProcessor().getMapRootClasses().get(fullName.replace('.', '/')); //todo[r.sh] anonymous classes?
 
     String result = null;
@@ -201,4 +243,16 @@ public class ImportCollector {
       .map(ent -> ent.getValue() + "." + ent.getKey())
       .collect(Collectors.toList());
   }
-}
\ No newline at end of file
+
+  private static class Lookup {
+    private final String fullName;
+    private final boolean imported;
+    private final String shortName;
+
+    private Lookup(String fullName, boolean imported, String shortName) {
+      this.fullName = fullName;
+      this.imported = imported;
+      this.shortName = shortName;
+    }
+  }
+}
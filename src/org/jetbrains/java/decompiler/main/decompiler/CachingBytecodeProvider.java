@@ -0,0 +1,118 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package org.jetbrains.java.decompiler.main.decompiler;
+
+import org.jetbrains.java.decompiler.main.extern.IBytecodeProvider;
+import org.jetbrains.java.decompiler.util.InterpreterUtil;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Bytecode provider which keeps every archive it was asked about open, so that the central directory is only read once,
+ * and keeps the most recently used class files in a cache bounded by their total size.
+ * The lazy loader asks for the same class over and over (once per method expansion and pool reload),
+ * which otherwise reopens the archive and inflates the entry again every time.
+ *
+ * The returned arrays are shared between callers and must not be modified.
+ */
+public class CachingBytecodeProvider implements IBytecodeProvider, Closeable {
+  public static final long DEFAULT_CACHE_SIZE = 64L * 1024 * 1024;
+
+  private final Map<String, ZipFile> archives = new LinkedHashMap<>();
+  private final Map<String, byte[]> cache = new LinkedHashMap<>(16, 0.75f, true);
+  private final long maxCacheSize;
+  private long cacheSize;
+
+  public CachingBytecodeProvider() {
+    this(DEFAULT_CACHE_SIZE);
+  }
+
+  public CachingBytecodeProvider(long maxCacheSize) {
+    this.maxCacheSize = maxCacheSize;
+  }
+
+  @Override
+  public byte[] getBytecode(String externalPath, String internalPath) throws IOException {
+    String key = internalPath == null ? externalPath : externalPath + '!' + internalPath;
+
+    byte[] bytes = getCached(key);
+    if (bytes == null) {
+      if (internalPath == null) {
+        bytes = InterpreterUtil.getBytes(new File(externalPath));
+      }
+      else {
+        ZipFile archive = getArchive(externalPath);
+        ZipEntry entry = archive.getEntry(internalPath);
+        if (entry == null) throw new IOException("Entry not found: " + internalPath);
+        bytes = InterpreterUtil.getBytes(archive, entry);
+      }
+      putCached(key, bytes);
+    }
+
+    return bytes;
+  }
+
+  private synchronized ZipFile getArchive(String path) throws IOException {
+    ZipFile archive = archives.get(path);
+    if (archive == null) {
+      archive = new ZipFile(new File(path));
+      archives.put(path, archive);
+    }
+    return archive;
+  }
+
+  private synchronized byte[] getCached(String key) {
+    return cache.get(key);
+  }
+
+  private synchronized void putCached(String key, byte[] bytes) {
+    if (bytes.length > maxCacheSize) {
+      return;
+    }
+
+    byte[] old = cache.put(key, bytes);
+    if (old != null) {
+      cacheSize -= old.length;
+    }
+    cacheSize += bytes.length;
+
+    Iterator<byte[]> iterator = cache.values().iterator();
+    while (cacheSize > maxCacheSize && iterator.hasNext()) {
+      cacheSize -= iterator.next().length;
+      iterator.remove();
+    }
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    cache.clear();
+    cacheSize = 0;
+
+    List<IOException> errors = new ArrayList<>();
+    for (ZipFile archive : archives.values()) {
+      try {
+        archive.close();
+      }
+      catch (IOException e) {
+        errors.add(e);
+      }
+    }
+    archives.clear();
+
+    if (!errors.isEmpty()) {
+      IOException e = errors.get(0);
+      for (int i = 1; i < errors.size(); i++) {
+        e.addSuppressed(errors.get(i));
+      }
+      throw e;
+    }
+  }
+}
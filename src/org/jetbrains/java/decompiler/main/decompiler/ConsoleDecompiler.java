@@ -7,7 +7,10 @@ import org.jetbrains.java.decompiler.main.extern.IBytecodeProvider;
 import org.jetbrains.java.decompiler.main.extern.IFernflowerLogger;
 import org.jetbrains.java.decompiler.main.extern.IFernflowerPreferences;
 import org.jetbrains.java.decompiler.main.extern.IResultSaver;
+import org.jetbrains.java.decompiler.struct.StructContext;
 import org.jetbrains.java.decompiler.util.InterpreterUtil;
+import org.jetbrains.java.decompiler.util.ZipArchiveReader;
+import org.jetbrains.java.decompiler.util.ZipArchiveWriter;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
@@ -15,12 +18,9 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
-import java.util.jar.JarOutputStream;
 import java.util.jar.Manifest;
 import java.util.stream.Stream;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
-import java.util.zip.ZipOutputStream;
+import java.util.zip.Deflater;
 
 public class ConsoleDecompiler implements IBytecodeProvider, IResultSaver {
   @SuppressWarnings("UseOfSystemOutOrSystemErr")
@@ -57,6 +57,11 @@ public class ConsoleDecompiler implements IBytecodeProvider, IResultSaver {
     }
     args = params.toArray(new String[params.size()]);
 
+    if (args.length > 0 && "-daemon".equals(args[0])) {
+      DecompilerDaemon.main(Arrays.copyOfRange(args, 1, args.length));
+      return;
+    }
+
     if (args.length < 2) {
       System.out.println(
         "Usage: java -jar fernflower.jar [-<option>=<value>]* [<source>]+ <destination>\n" +
@@ -64,76 +69,139 @@ public class ConsoleDecompiler implements IBytecodeProvider, IResultSaver {
       return;
     }
 
-    Map<String, Object> mapOptions = new HashMap<>();
-    List<File> sources = new ArrayList<>();
-    List<File> libraries = new ArrayList<>();
-    Set<String> whitelist = new HashSet<>();
+    CommandLine line = CommandLine.parse(Arrays.asList(args), true, System.out);
+    String error = line.check();
+    if (error != null) {
+      System.out.println("error: " + error);
+      return;
+    }
 
-    boolean isOption = true;
-    for (int i = 0; i < args.length - 1; ++i) { // last parameter - destination
-      String arg = args[i];
+    IFernflowerLogger logger = new ThreadedPrintStreamLogger(System.out);
+    ConsoleDecompiler decompiler = new ConsoleDecompiler(line.destination, line.options, logger);
+    line.addTo(decompiler);
+    decompiler.decompileContext();
+  }
 
-      if (isOption && arg.length() > 5 && arg.charAt(0) == '-' && arg.charAt(4) == '=') {
-        String value = arg.substring(5);
-        if ("true".equalsIgnoreCase(value)) {
-          value = "1";
+  /**
+   * Options, libraries and sources given on the command line, or with a request to the daemon.
+   */
+  static class CommandLine {
+    final Map<String, Object> options = new HashMap<>();
+    final List<File> sources = new ArrayList<>();
+    final List<File> libraries = new ArrayList<>();
+    final Set<String> whitelist = new HashSet<>();
+    File previousSource;
+    File previousOutput;
+    File destination;
+
+    /**
+     * @param withDestination whether the last argument is the destination
+     * @param out where warnings about the arguments are printed to
+     */
+    static CommandLine parse(List<String> args, boolean withDestination, PrintStream out) {
+      CommandLine line = new CommandLine();
+      int end = withDestination ? args.size() - 1 : args.size();
+
+      boolean isOption = true;
+      for (int i = 0; i < end; ++i) {
+        String arg = args.get(i);
+
+        if (isOption && arg.length() > 5 && arg.charAt(0) == '-' && arg.charAt(4) == '=') {
+          String value = arg.substring(5);
+          if ("true".equalsIgnoreCase(value)) {
+            value = "1";
+          }
+          else if ("false".equalsIgnoreCase(value)) {
+            value = "0";
+          }
+
+          line.options.put(arg.substring(1, 4), value);
         }
-        else if ("false".equalsIgnoreCase(value)) {
-          value = "0";
+        else {
+          isOption = false;
+
+          if (arg.startsWith("-e=")) {
+            addPath(line.libraries, arg.substring(3), out);
+          }
+          else if (arg.startsWith("-only=")) {
+            line.whitelist.add(arg.substring(6));
+          }
+          else if (arg.startsWith("-prev=")) {
+            line.previousSource = new File(arg.substring(6));
+          }
+          else if (arg.startsWith("-prevout=")) {
+            line.previousOutput = new File(arg.substring(9));
+          }
+          else {
+            addPath(line.sources, arg, out);
+          }
         }
-
-        mapOptions.put(arg.substring(1, 4), value);
       }
-      else {
-        isOption = false;
 
-        if (arg.startsWith("-e=")) {
-          addPath(libraries, arg.substring(3));
-        }
-        else if (arg.startsWith("-only=")) {
-          whitelist.add(arg.substring(6));
-        }
-        else {
-          addPath(sources, arg);
-        }
+      if (withDestination && !args.isEmpty()) {
+        line.destination = new File(args.get(args.size() - 1));
       }
-    }
 
-    if (sources.isEmpty()) {
-      System.out.println("error: no sources given");
-      return;
+      return line;
     }
 
-    File destination = new File(args[args.length - 1]);
-    if (!destination.isDirectory() && (sources.size() > 1 || !sources.get(0).isFile())) {
-      System.out.println("error: destination '" + destination + "' is not a directory");
-      return;
-    }
+    /**
+     * @return the reason why nothing can be decompiled with these arguments, or null if they are fine
+     */
+    String check() {
+      if (sources.isEmpty()) {
+        return "no sources given";
+      }
 
-    IFernflowerLogger logger = new ThreadedPrintStreamLogger(System.out);
-    ConsoleDecompiler decompiler = new ConsoleDecompiler(destination, mapOptions, logger);
+      if ((previousSource != null || previousOutput != null) &&
+          (previousSource == null || previousOutput == null || sources.size() != 1 || !sources.get(0).isFile())) {
+        return "incremental mode needs -prev=<previous archive>, -prevout=<previous output> and a single source archive";
+      }
 
-    for (File library : libraries) {
-      decompiler.addLibrary(library);
-    }
-    for (File source : sources) {
-      decompiler.addSource(source);
-    }
-    for (String prefix : whitelist) {
-      decompiler.addWhitelist(prefix);
+      if (!destination.isDirectory() && (sources.size() > 1 || !sources.get(0).isFile())) {
+        return "destination '" + destination + "' is not a directory";
+      }
+
+      return null;
     }
 
-    decompiler.decompileContext();
+    void addTo(ConsoleDecompiler decompiler) {
+      for (File library : libraries) {
+        decompiler.addLibrary(library);
+      }
+      if (previousSource != null) {
+        decompiler.addSource(sources.get(0), previousSource, previousOutput);
+      }
+      else {
+        for (File source : sources) {
+          decompiler.addSource(source);
+        }
+      }
+      for (String prefix : whitelist) {
+        decompiler.addWhitelist(prefix);
+      }
+    }
   }
 
-  @SuppressWarnings("UseOfSystemOutOrSystemErr")
-  private static void addPath(List<? super File> list, String path) {
+  private static void addPath(List<? super File> list, String path, PrintStream out) {
     File file = new File(path);
     if (file.exists()) {
       list.add(file);
     }
     else {
-      System.out.println("warn: missing '" + path + "', ignored");
+      out.println("warn: missing '" + path + "', ignored");
+    }
+  }
+
+  static int getThreads(Map<String, Object> options) {
+    String thr = options != null ? (String) options.getOrDefault(IFernflowerPreferences.THREADS, "AUTO") : "AUTO";
+    if ("AUTO".equals(thr)) {
+      return Runtime.getRuntime().availableProcessors();
+    }
+    try {
+      return Integer.parseInt(thr);
+    } catch (NumberFormatException e) {
+      throw new RuntimeException("Malformed threads option: " + thr);
     }
   }
 
@@ -143,36 +211,50 @@ public class ConsoleDecompiler implements IBytecodeProvider, IResultSaver {
 
   private final File root;
   private final Fernflower engine;
-  private final Map<String, ZipOutputStream> mapArchiveStreams = new HashMap<>();
+  private final CachingBytecodeProvider bytecodeProvider = new CachingBytecodeProvider();
+  private final Map<String, ZipArchiveWriter> mapArchiveStreams = new HashMap<>();
   private final Map<String, Set<String>> mapArchiveEntries = new HashMap<>();
+  private final Map<String, Map<String, ZipArchiveReader>> mapSourceArchives = new HashMap<>();
+  private final int compressionLevel;
 
   protected ConsoleDecompiler(File destination, Map<String, Object> options, IFernflowerLogger logger) {
+    this(destination, options, logger, null);
+  }
+
+  /**
+   * @param libraries a context whose library classes are shared instead of being loaded again, or null
+   */
+  protected ConsoleDecompiler(File destination, Map<String, Object> options, IFernflowerLogger logger, StructContext libraries) {
     root = destination;
 
-    String thr = options != null ? (String) options.getOrDefault(IFernflowerPreferences.THREADS, "AUTO") : "AUTO";
-    int threads;
-    if ("AUTO".equals(thr)) {
-      threads = Runtime.getRuntime().availableProcessors();
-    } else {
-      try {
-        threads = Integer.parseInt(thr);
-      } catch (NumberFormatException e) {
-        throw new RuntimeException("Malformed threads option: " + thr);
-      }
+    int threads = getThreads(options);
+
+    String zcl = options != null ? (String) options.getOrDefault(IFernflowerPreferences.COMPRESSION_LEVEL, "-1") : "-1";
+    try {
+      compressionLevel = Integer.parseInt(zcl);
+    } catch (NumberFormatException e) {
+      throw new RuntimeException("Malformed compression level option: " + zcl);
+    }
+    if (compressionLevel < Deflater.DEFAULT_COMPRESSION || compressionLevel > Deflater.BEST_COMPRESSION) {
+      throw new RuntimeException("Compression level must be between -1 and 9: " + zcl);
     }
 
-    IResultSaver saver = root.isDirectory() ? this : new SingleFileSaver(destination);
+    IResultSaver saver = root.isDirectory() ? this : new SingleFileSaver(destination, compressionLevel);
     if (threads > 1) {
-      saver = new ThreadSafeResultSaver(root);
+      saver = new ThreadSafeResultSaver(root, compressionLevel);
     }
 
-    engine = new Fernflower(this, saver, options, logger, threads);
+    engine = new Fernflower(this, saver, options, logger, threads, libraries);
   }
 
   public void addSource(File source) {
     engine.addSource(source);
   }
 
+  public void addSource(File source, File previousSource, File previousOutput) {
+    engine.addSource(source, previousSource, previousOutput);
+  }
+
   public void addLibrary(File library) {
     engine.addLibrary(library);
   }
@@ -186,6 +268,12 @@ public class ConsoleDecompiler implements IBytecodeProvider, IResultSaver {
       engine.decompileContext();
     }
     finally {
+      try {
+        bytecodeProvider.close();
+      }
+      catch (IOException ex) {
+        DecompilerContext.getLogger().writeMessage("Cannot close source archives", IFernflowerLogger.Severity.WARN, ex);
+      }
       engine.clearContext();
     }
   }
@@ -196,17 +284,7 @@ public class ConsoleDecompiler implements IBytecodeProvider, IResultSaver {
 
   @Override
   public byte[] getBytecode(String externalPath, String internalPath) throws IOException {
-    File file = new File(externalPath);
-    if (internalPath == null) {
-      return InterpreterUtil.getBytes(file);
-    }
-    else {
-      try (ZipFile archive = new ZipFile(file)) {
-        ZipEntry entry = archive.getEntry(internalPath);
-        if (entry == null) throw new IOException("Entry not found: " + internalPath);
-        return InterpreterUtil.getBytes(archive, entry);
-      }
-    }
+    return bytecodeProvider.getBytecode(externalPath, internalPath);
   }
 
   // *******************************************************************
@@ -246,6 +324,11 @@ public class ConsoleDecompiler implements IBytecodeProvider, IResultSaver {
     }
   }
 
+  @Override
+  public Writer openClassFile(String path, String qualifiedName, String entryName, int[] mapping) throws IOException {
+    return new OutputStreamWriter(new FileOutputStream(new File(getAbsolutePath(path), entryName)), StandardCharsets.UTF_8);
+  }
+
   @Override
   public void createArchive(String path, String archiveName, Manifest manifest) {
     File file = new File(getAbsolutePath(path), archiveName);
@@ -254,9 +337,11 @@ public class ConsoleDecompiler implements IBytecodeProvider, IResultSaver {
         throw new IOException("Cannot create file " + file);
       }
 
-      FileOutputStream fileStream = new FileOutputStream(file);
-      ZipOutputStream zipStream = manifest != null ? new JarOutputStream(fileStream, manifest) : new ZipOutputStream(fileStream);
-      mapArchiveStreams.put(file.getPath(), zipStream);
+      ZipArchiveWriter writer = new ZipArchiveWriter(file, compressionLevel);
+      if (manifest != null) {
+        writer.writeManifest(manifest);
+      }
+      mapArchiveStreams.put(file.getPath(), writer);
     }
     catch (IOException ex) {
       DecompilerContext.getLogger().writeMessage("Cannot create archive " + file, ex);
@@ -265,7 +350,19 @@ public class ConsoleDecompiler implements IBytecodeProvider, IResultSaver {
 
   @Override
   public void saveDirEntry(String path, String archiveName, String entryName) {
-    saveClassEntry(path, archiveName, null, entryName, null);
+    String file = new File(getAbsolutePath(path), archiveName).getPath();
+
+    if (!checkEntry(entryName, file)) {
+      return;
+    }
+
+    try {
+      mapArchiveStreams.get(file).writeDirectory(entryName);
+    }
+    catch (IOException ex) {
+      String message = "Cannot write entry " + entryName + " to " + file;
+      DecompilerContext.getLogger().writeMessage(message, ex);
+    }
   }
 
   @Override
@@ -276,14 +373,17 @@ public class ConsoleDecompiler implements IBytecodeProvider, IResultSaver {
       return;
     }
 
-    try (ZipFile srcArchive = new ZipFile(new File(source))) {
-      ZipEntry entry = srcArchive.getEntry(entryName);
+    try {
+      Map<String, ZipArchiveReader> sources = mapSourceArchives.computeIfAbsent(file, k -> new HashMap<>());
+      ZipArchiveReader srcArchive = sources.get(source);
+      if (srcArchive == null) {
+        srcArchive = new ZipArchiveReader(new File(source));
+        sources.put(source, srcArchive);
+      }
+
+      ZipArchiveReader.Entry entry = srcArchive.getEntry(entryName);
       if (entry != null) {
-        try (InputStream in = srcArchive.getInputStream(entry)) {
-          ZipOutputStream out = mapArchiveStreams.get(file);
-          out.putNextEntry(new ZipEntry(entryName));
-          InterpreterUtil.copyStream(in, out);
-        }
+        mapArchiveStreams.get(file).writeRawEntry(entry, srcArchive.readRawData(entry));
       }
     }
     catch (IOException ex) {
@@ -301,11 +401,8 @@ public class ConsoleDecompiler implements IBytecodeProvider, IResultSaver {
     }
 
     try {
-      ZipOutputStream out = mapArchiveStreams.get(file);
-      out.putNextEntry(new ZipEntry(entryName));
-      if (content != null) {
-        out.write(content.getBytes(StandardCharsets.UTF_8));
-      }
+      byte[] data = content != null ? content.getBytes(StandardCharsets.UTF_8) : new byte[0];
+      mapArchiveStreams.get(file).writeEntry(entryName, data);
     }
     catch (IOException ex) {
       String message = "Cannot write entry " + entryName + " to " + file;
@@ -313,6 +410,17 @@ public class ConsoleDecompiler implements IBytecodeProvider, IResultSaver {
     }
   }
 
+  @Override
+  public Writer openClassEntry(String path, String archiveName, String qualifiedName, String entryName) {
+    String file = new File(getAbsolutePath(path), archiveName).getPath();
+
+    return ZipArchiveWriter.compressingWriter(entryName, compressionLevel, entry -> {
+      if (checkEntry(entryName, file)) {
+        mapArchiveStreams.get(file).writeCompressedEntry(entry);
+      }
+    });
+  }
+
   private boolean checkEntry(String entryName, String file) {
     Set<String> set = mapArchiveEntries.computeIfAbsent(file, k -> new HashSet<>());
 
@@ -329,6 +437,12 @@ public class ConsoleDecompiler implements IBytecodeProvider, IResultSaver {
     String file = new File(getAbsolutePath(path), archiveName).getPath();
     try {
       mapArchiveEntries.remove(file);
+      Map<String, ZipArchiveReader> sources = mapSourceArchives.remove(file);
+      if (sources != null) {
+        for (ZipArchiveReader source : sources.values()) {
+          source.close();
+        }
+      }
       mapArchiveStreams.remove(file).close();
     }
     catch (IOException ex) {
@@ -0,0 +1,118 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package org.jetbrains.java.decompiler.main.decompiler;
+
+import org.jetbrains.java.decompiler.main.Fernflower;
+import org.jetbrains.java.decompiler.main.extern.IFernflowerLogger;
+import org.jetbrains.java.decompiler.main.extern.IFernflowerPreferences;
+import org.jetbrains.java.decompiler.struct.StructContext;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decompiler which keeps running between requests, so that the JVM stays warm and the libraries are only loaded once.
+ *
+ * Started with {@code java -jar fernflower.jar -daemon [-<option>=<value>]* [-e=<library>]*}, it reads requests from the standard input.
+ * A request has the arguments of a single run without the options, one per line like in a -cfg file, and ends with an empty line:
+ * {@code [-e=<library>]* [-only=<prefix>]* [<source>]+ <destination>}. Libraries given with a request are only used for that request.
+ * The daemon answers each request with a line "ok" or "error: <reason>" on the standard output, the log goes to the standard error.
+ * It stops at the end of the input.
+ */
+public class DecompilerDaemon implements Closeable {
+  private final Map<String, Object> options;
+  private final IFernflowerLogger logger;
+  private final CachingBytecodeProvider bytecodeProvider = new CachingBytecodeProvider();
+  private final StructContext libraries;
+
+  @SuppressWarnings("UseOfSystemOutOrSystemErr")
+  public static void main(String[] args) {
+    ConsoleDecompiler.CommandLine line = ConsoleDecompiler.CommandLine.parse(Arrays.asList(args), false, System.err);
+    if (!line.sources.isEmpty()) {
+      System.out.println("error: sources are given with each request");
+      return;
+    }
+    if ("1".equals(line.options.get(IFernflowerPreferences.RENAME_ENTITIES))) {
+      System.out.println("error: renaming is not supported by the daemon");
+      return;
+    }
+
+    IFernflowerLogger logger = new ThreadedPrintStreamLogger(System.err);
+    try (DecompilerDaemon daemon = new DecompilerDaemon(line.options, line.libraries, logger);
+         BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))) {
+      List<String> request = new ArrayList<>();
+      String arg;
+      while ((arg = in.readLine()) != null) {
+        if (!arg.isEmpty()) {
+          request.add(arg);
+        }
+        else if (!request.isEmpty()) {
+          System.out.println(daemon.decompile(request));
+          request.clear();
+        }
+      }
+      if (!request.isEmpty()) {
+        System.out.println(daemon.decompile(request));
+      }
+    }
+    catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  public DecompilerDaemon(Map<String, Object> options, List<File> libraries, IFernflowerLogger logger) {
+    this.options = options;
+    this.logger = logger;
+
+    // the libraries are loaded by an engine which decompiles nothing, the engine of each request shares its classes
+    Fernflower engine = new Fernflower(bytecodeProvider, null, options, logger, ConsoleDecompiler.getThreads(options));
+    try {
+      for (File library : libraries) {
+        engine.addLibrary(library);
+      }
+    }
+    finally {
+      engine.clearContext();
+    }
+    this.libraries = engine.getStructContext();
+  }
+
+  /**
+   * Decompiles the sources of one request.
+   * @return the answer to the request
+   */
+  @SuppressWarnings("UseOfSystemOutOrSystemErr")
+  public String decompile(List<String> args) {
+    ConsoleDecompiler.CommandLine request = ConsoleDecompiler.CommandLine.parse(args, true, System.err);
+    if (!request.options.isEmpty()) {
+      return "error: options can only be given when the daemon is started";
+    }
+    String error = request.check();
+    if (error != null) {
+      return "error: " + error;
+    }
+
+    try {
+      ConsoleDecompiler decompiler = new ConsoleDecompiler(request.destination, options, logger, libraries);
+      request.addTo(decompiler);
+      decompiler.decompileContext();
+      return "ok";
+    }
+    catch (RuntimeException ex) {
+      logger.writeMessage("Cannot decompile " + request.sources, ex);
+      return "error: " + ex;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    bytecodeProvider.close();
+  }
+}
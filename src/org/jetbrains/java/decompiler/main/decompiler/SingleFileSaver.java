@@ -1,29 +1,36 @@
 package org.jetbrains.java.decompiler.main.decompiler;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
-import java.util.jar.JarOutputStream;
 import java.util.jar.Manifest;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
-import java.util.zip.ZipOutputStream;
+import java.util.zip.Deflater;
 
 import org.jetbrains.java.decompiler.main.DecompilerContext;
 import org.jetbrains.java.decompiler.main.extern.IFernflowerLogger;
 import org.jetbrains.java.decompiler.main.extern.IResultSaver;
-import org.jetbrains.java.decompiler.util.InterpreterUtil;
+import org.jetbrains.java.decompiler.util.ZipArchiveReader;
+import org.jetbrains.java.decompiler.util.ZipArchiveWriter;
 
 public class SingleFileSaver implements IResultSaver {
   private final File target;
-  private ZipOutputStream output;
+  private final int compressionLevel;
+  private ZipArchiveWriter output;
   private Set<String> entries = new HashSet<>();
+  private final Map<String, ZipArchiveReader> sources = new HashMap<>();
 
   public SingleFileSaver(File target) {
+    this(target, Deflater.DEFAULT_COMPRESSION);
+  }
+
+  public SingleFileSaver(File target, int compressionLevel) {
     this.target = target;
+    this.compressionLevel = compressionLevel;
   }
 
   @Override
@@ -47,8 +54,9 @@ public class SingleFileSaver implements IResultSaver {
     if (output != null)
       throw new UnsupportedOperationException("Attempted to write multiple archives at the same time");
     try {
-      FileOutputStream stream = new FileOutputStream(target);
-      output = manifest != null ? new JarOutputStream(stream, manifest) : new ZipOutputStream(stream);
+      output = new ZipArchiveWriter(target, compressionLevel);
+      if (manifest != null)
+        output.writeManifest(manifest);
     } catch (IOException e) {
       DecompilerContext.getLogger().writeMessage("Cannot create archive " + target, e);
     }
@@ -56,7 +64,16 @@ public class SingleFileSaver implements IResultSaver {
 
   @Override
   public void saveDirEntry(String path, String archiveName, String entryName) {
-    saveClassEntry(path, archiveName, null, entryName, null);
+    if (!checkEntry(entryName))
+      return;
+
+    try {
+      output.writeDirectory(entryName);
+    }
+    catch (IOException ex) {
+      String message = "Cannot write entry " + entryName + " to " + target;
+      DecompilerContext.getLogger().writeMessage(message, ex);
+    }
   }
 
   @Override
@@ -64,14 +81,16 @@ public class SingleFileSaver implements IResultSaver {
     if (!checkEntry(entryName))
       return;
 
-    try (ZipFile srcArchive = new ZipFile(new File(source))) {
-      ZipEntry entry = srcArchive.getEntry(entryName);
-      if (entry != null) {
-        try (InputStream in = srcArchive.getInputStream(entry)) {
-          output.putNextEntry(new ZipEntry(entryName));
-          InterpreterUtil.copyStream(in, output);
-        }
+    try {
+      ZipArchiveReader srcArchive = sources.get(source);
+      if (srcArchive == null) {
+        srcArchive = new ZipArchiveReader(new File(source));
+        sources.put(source, srcArchive);
       }
+
+      ZipArchiveReader.Entry entry = srcArchive.getEntry(entryName);
+      if (entry != null)
+        output.writeRawEntry(entry, srcArchive.readRawData(entry));
     }
     catch (IOException ex) {
       String message = "Cannot copy entry " + entryName + " from " + source + " to " + target;
@@ -85,9 +104,7 @@ public class SingleFileSaver implements IResultSaver {
         return;
 
     try {
-      output.putNextEntry(new ZipEntry(entryName));
-      if (content != null)
-          output.write(content.getBytes("UTF-8"));
+      output.writeEntry(entryName, content != null ? content.getBytes(StandardCharsets.UTF_8) : new byte[0]);
     }
     catch (IOException ex) {
       String message = "Cannot write entry " + entryName + " to " + target;
@@ -95,9 +112,20 @@ public class SingleFileSaver implements IResultSaver {
     }
   }
 
+  @Override
+  public Writer openClassEntry(String path, String archiveName, String qualifiedName, String entryName) {
+    return ZipArchiveWriter.compressingWriter(entryName, compressionLevel, entry -> {
+      if (checkEntry(entryName))
+        output.writeCompressedEntry(entry);
+    });
+  }
+
   @Override
   public void closeArchive(String path, String archiveName) {
     try {
+      for (ZipArchiveReader source : sources.values())
+        source.close();
+      sources.clear();
       output.close();
       entries.clear();
       output = null;
@@ -5,6 +5,8 @@ import org.jetbrains.java.decompiler.main.DecompilerContext;
 import org.jetbrains.java.decompiler.main.extern.IFernflowerLogger;
 import org.jetbrains.java.decompiler.main.extern.IResultSaver;
 import org.jetbrains.java.decompiler.util.InterpreterUtil;
+import org.jetbrains.java.decompiler.util.ZipArchiveReader;
+import org.jetbrains.java.decompiler.util.ZipArchiveWriter;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
@@ -16,11 +18,8 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.jar.JarOutputStream;
 import java.util.jar.Manifest;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
-import java.util.zip.ZipOutputStream;
+import java.util.zip.Deflater;
 
 /**
  * File saver supporting both, Threaded saving and 'SingleFile' mode.
@@ -30,11 +29,17 @@ public class ThreadSafeResultSaver implements IResultSaver {
 
   private final Map<String, ArchiveContext> archiveContexts = new HashMap<>();
   private final File target;
+  private final int compressionLevel;
   private final boolean archiveMode;//Latch for Archive mode.
   private ArchiveContext singeArchiveCtx;
 
   public ThreadSafeResultSaver(File target) {
+    this(target, Deflater.DEFAULT_COMPRESSION);
+  }
+
+  public ThreadSafeResultSaver(File target, int compressionLevel) {
     this.target = target;
+    this.compressionLevel = compressionLevel;
     this.archiveMode = !target.isDirectory();
   }
 
@@ -59,9 +64,11 @@ public class ThreadSafeResultSaver implements IResultSaver {
       if (!(file.createNewFile() || file.isFile())) {
         throw new IOException("Cannot create file " + file);
       }
-      FileOutputStream fos = new FileOutputStream(file);
-      ZipOutputStream zos = manifest != null ? new JarOutputStream(fos, manifest) : new ZipOutputStream(fos);
-      ctx = new ArchiveContext(file, zos);
+      ZipArchiveWriter writer = new ZipArchiveWriter(file, compressionLevel);
+      if (manifest != null) {
+        writer.writeManifest(manifest);
+      }
+      ctx = new ArchiveContext(file, writer);
       if (archiveMode) {
         singeArchiveCtx = ctx;
       } else {
@@ -74,7 +81,21 @@ public class ThreadSafeResultSaver implements IResultSaver {
 
   @Override
   public void saveDirEntry(String path, String archiveName, String entryName) {
-    saveClassEntry(path, archiveName, null, entryName, null);
+    String file = new File(getAbsolutePath(path), archiveName).getPath();
+    ArchiveContext ctx = getCtx(file);
+    if (ctx == null) {
+      throw new RuntimeException("Archive closed and tried to write entry '" + entryName + "' to '" + file + "'.");
+    }
+    ctx.submit(() -> {
+      if (!ctx.addEntry(entryName)) {
+        return;
+      }
+      try {
+        ctx.stream.writeDirectory(entryName);
+      } catch (IOException e) {
+        DecompilerContext.getLogger().writeMessage("Cannot write entry " + entryName + " to " + file, e);
+      }
+    });
   }
 
   @Override
@@ -88,13 +109,11 @@ public class ThreadSafeResultSaver implements IResultSaver {
       if (!ctx.addEntry(entryName)) {
         return;
       }
-      try (ZipFile srcArchive = new ZipFile(new File(source))) {
-        ZipEntry entry = srcArchive.getEntry(entryName);
+      try {
+        ZipArchiveReader srcArchive = ctx.getSource(source);
+        ZipArchiveReader.Entry entry = srcArchive.getEntry(entryName);
         if (entry != null) {
-          try (InputStream in = srcArchive.getInputStream(entry)) {
-            ctx.stream.putNextEntry(new ZipEntry(entryName));
-            InterpreterUtil.copyStream(in, ctx.stream);
-          }
+          ctx.stream.writeRawEntry(entry, srcArchive.readRawData(entry));
         }
       } catch (IOException e) {
         DecompilerContext.getLogger().writeMessage("Cannot copy entry " + entryName + " from " + source + " to " + file, e);
@@ -109,21 +128,49 @@ public class ThreadSafeResultSaver implements IResultSaver {
     if (ctx == null) {
       throw new RuntimeException("Archive closed and tried to write entry '" + entryName + "' to '" + file + "'.");
     }
+    // compress on the calling thread, so that the archive thread only has to append
+    byte[] data = content != null ? content.getBytes(StandardCharsets.UTF_8) : new byte[0];
+    ZipArchiveWriter.CompressedEntry entry = ZipArchiveWriter.compress(entryName, data, compressionLevel);
     ctx.submit(() -> {
       if (!ctx.addEntry(entryName)) {
         return;
       }
       try {
-        ctx.stream.putNextEntry(new ZipEntry(entryName));
-        if (content != null) {
-          ctx.stream.write(content.getBytes(StandardCharsets.UTF_8));
-        }
+        ctx.stream.writeCompressedEntry(entry);
       } catch (IOException e) {
         DecompilerContext.getLogger().writeMessage("Cannot write entry " + entryName + " to " + file, e);
       }
     });
   }
 
+  @Override
+  public Writer openClassEntry(String path, String archiveName, String qualifiedName, String entryName) {
+    String file = new File(getAbsolutePath(path), archiveName).getPath();
+    ArchiveContext ctx = getCtx(file);
+    if (ctx == null) {
+      throw new RuntimeException("Archive closed and tried to write entry '" + entryName + "' to '" + file + "'.");
+    }
+    // compressed on the calling thread while it is written, the archive thread only appends it
+    return ZipArchiveWriter.compressingWriter(entryName, compressionLevel, entry -> ctx.submit(() -> {
+      if (!ctx.addEntry(entryName)) {
+        return;
+      }
+      try {
+        ctx.stream.writeCompressedEntry(entry);
+      } catch (IOException e) {
+        DecompilerContext.getLogger().writeMessage("Cannot write entry " + entryName + " to " + file, e);
+      }
+    }));
+  }
+
+  @Override
+  public Writer openClassFile(String path, String qualifiedName, String entryName, int[] mapping) throws IOException {
+    if (archiveMode) {
+      throw new UnsupportedOperationException("Targeted a single output, but tried to save a class file");
+    }
+    return new OutputStreamWriter(new FileOutputStream(new File(getAbsolutePath(path), entryName)), StandardCharsets.UTF_8);
+  }
+
   @Override
   public void closeArchive(String path, String archiveName) {
     String file = new File(getAbsolutePath(path), archiveName).getPath();
@@ -134,6 +181,7 @@ public class ThreadSafeResultSaver implements IResultSaver {
     //Submit a job at the end of the executor.
     Future<?> closeFuture = ctx.submit(() -> {
       try {
+        ctx.closeSources();
         ctx.stream.close();
       } catch (IOException e) {
         DecompilerContext.getLogger().writeMessage("Cannot close " + file, IFernflowerLogger.Severity.WARN, e);
@@ -203,15 +251,33 @@ public class ThreadSafeResultSaver implements IResultSaver {
   private static class ArchiveContext {
 
     public final File file;
-    public final ZipOutputStream stream;
+    public final ZipArchiveWriter stream;
     public final ExecutorService executor = Executors.newSingleThreadExecutor();
     public final Set<String> savedEntries = new HashSet<>();
+    private final Map<String, ZipArchiveReader> sources = new HashMap<>();
 
-    private ArchiveContext(File file, ZipOutputStream stream) {
+    private ArchiveContext(File file, ZipArchiveWriter stream) {
       this.file = file;
       this.stream = stream;
     }
 
+    // only used on the executor thread
+    public ZipArchiveReader getSource(String source) throws IOException {
+      ZipArchiveReader archive = sources.get(source);
+      if (archive == null) {
+        archive = new ZipArchiveReader(new File(source));
+        sources.put(source, archive);
+      }
+      return archive;
+    }
+
+    public void closeSources() throws IOException {
+      for (ZipArchiveReader archive : sources.values()) {
+        archive.close();
+      }
+      sources.clear();
+    }
+
     public Future<?> submit(Runnable runnable) {
       return executor.submit(runnable);
     }
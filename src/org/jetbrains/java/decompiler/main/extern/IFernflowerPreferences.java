@@ -39,6 +39,10 @@ public interface IFernflowerPreferences {
   String EXPLICIT_GENERIC_ARGUMENTS = "ega";
   String INLINE_SIMPLE_LAMBDAS = "isl";
   String THREADS = "thr";
+  String CACHE_DIRECTORY = "cdr";
+  String COMPRESSION_LEVEL = "zcl";
+  String LOW_MEMORY = "lmm";
+  String PARALLEL_METHODS = "pmd";
 
   String LOG_LEVEL = "log";
   String MAX_PROCESSING_METHOD = "mpm";
@@ -94,6 +98,10 @@ public interface IFernflowerPreferences {
     defaults.put(EXPLICIT_GENERIC_ARGUMENTS, "0");
     defaults.put(INLINE_SIMPLE_LAMBDAS, "1");
     defaults.put(THREADS, "AUTO");
+    defaults.put(CACHE_DIRECTORY, "");
+    defaults.put(COMPRESSION_LEVEL, "-1");
+    defaults.put(LOW_MEMORY, "0");
+    defaults.put(PARALLEL_METHODS, "0");
 
     defaults.put(LOG_LEVEL, IFernflowerLogger.Severity.INFO.name());
     defaults.put(MAX_PROCESSING_METHOD, "0");
@@ -1,6 +1,9 @@
 // Copyright 2000-2017 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
 package org.jetbrains.java.decompiler.main.extern;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.jar.Manifest;
 
 public interface IResultSaver {
@@ -10,13 +13,43 @@ public interface IResultSaver {
 
   void saveClassFile(String path, String qualifiedName, String entryName, String content, int[] mapping);
 
+  /**
+   * Opens a class file to write its source to; the file is complete once the returned writer is closed.
+   * Savers which can write to the destination directly override this, the default collects the source and passes it to {@link #saveClassFile}.
+   */
+  default Writer openClassFile(String path, String qualifiedName, String entryName, int[] mapping) throws IOException {
+    return new StringWriter() {
+      @Override
+      public void close() {
+        saveClassFile(path, qualifiedName, entryName, toString(), mapping);
+      }
+    };
+  }
+
   void createArchive(String path, String archiveName, Manifest manifest);
 
   void saveDirEntry(String path, String archiveName, String entryName);
 
+  /**
+   * Copies an entry of an archive, the source archive or the output of an earlier run in incremental mode, into the given archive.
+   * Savers which are able to do so copy the compressed data as is instead of inflating and compressing it again.
+   */
   void copyEntry(String source, String path, String archiveName, String entry);
 
   void saveClassEntry(String path, String archiveName, String qualifiedName, String entryName, String content);
 
+  /**
+   * Opens an archive entry to write the source of a class to; the entry is complete once the returned writer is closed.
+   * The default collects the source and passes it to {@link #saveClassEntry}.
+   */
+  default Writer openClassEntry(String path, String archiveName, String qualifiedName, String entryName) throws IOException {
+    return new StringWriter() {
+      @Override
+      public void close() {
+        saveClassEntry(path, archiveName, qualifiedName, entryName, toString());
+      }
+    };
+  }
+
   void closeArchive(String path, String archiveName);
 }
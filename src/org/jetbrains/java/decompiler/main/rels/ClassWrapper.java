@@ -4,7 +4,9 @@ package org.jetbrains.java.decompiler.main.rels;
 import org.jetbrains.java.decompiler.code.CodeConstants;
 import org.jetbrains.java.decompiler.main.ClassesProcessor.ClassNode;
 import org.jetbrains.java.decompiler.main.DecompilerContext;
+import org.jetbrains.java.decompiler.main.IdentityRenamerFactory;
 import org.jetbrains.java.decompiler.main.collectors.CounterContainer;
+import org.jetbrains.java.decompiler.main.collectors.ImportCollector;
 import org.jetbrains.java.decompiler.main.collectors.VarNamesCollector;
 import org.jetbrains.java.decompiler.main.extern.IFernflowerLogger;
 import org.jetbrains.java.decompiler.main.extern.IFernflowerPreferences;
@@ -19,12 +21,17 @@ import org.jetbrains.java.decompiler.struct.gen.MethodDescriptor;
 import org.jetbrains.java.decompiler.util.InterpreterUtil;
 import org.jetbrains.java.decompiler.util.VBStyleCollection;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ClassWrapper {
   private final StructClass classStruct;
-  private final Set<String> hiddenMembers = new HashSet<>();
+  private final Set<String> hiddenMembers = Collections.synchronizedSet(new HashSet<>());
   private final VBStyleCollection<Exprent, String> staticFieldInitializers = new VBStyleCollection<>();
   private final VBStyleCollection<Exprent, String> dynamicFieldInitializers = new VBStyleCollection<>();
   private final VBStyleCollection<MethodWrapper, String> methods = new VBStyleCollection<>();
@@ -41,140 +48,198 @@ public class ClassWrapper {
     int maxSec = Integer.parseInt(DecompilerContext.getProperty(IFernflowerPreferences.MAX_PROCESSING_METHOD).toString());
     boolean testMode = DecompilerContext.getOption(IFernflowerPreferences.UNIT_TEST_MODE);
 
-    for (StructMethod mt : classStruct.getMethods()) {
-      DecompilerContext.getLogger().startMethod(mt.getName() + " " + mt.getDescriptor());
+    if (canDecompileMethodsInParallel()) {
+      MethodWrapper[] wrappers = decompileMethodsInParallel(maxSec, testMode);
+      for (MethodWrapper methodWrapper : wrappers) {
+        StructMethod mt = methodWrapper.methodStruct;
+        methods.addWithKey(methodWrapper, InterpreterUtil.makeUniqueKey(mt.getName(), mt.getDescriptor()));
+      }
+    }
+    else {
+      for (StructMethod mt : classStruct.getMethods()) {
+        MethodWrapper methodWrapper = decompileMethod(mt, maxSec, testMode);
+        methods.addWithKey(methodWrapper, InterpreterUtil.makeUniqueKey(mt.getName(), mt.getDescriptor()));
+      }
+    }
 
-      MethodDescriptor md = MethodDescriptor.parseDescriptor(mt, null);
-      VarProcessor varProc = new VarProcessor(mt, md);
-      DecompilerContext.startMethod(varProc);
+    DecompilerContext.getLogger().endClass();
+  }
 
-      VarNamesCollector vc = varProc.getVarNamesCollector();
-      CounterContainer counter = DecompilerContext.getCounterContainer();
+  // methods of a class are decompiled in parallel only by the workers of the class pool, and only when their variable names
+  // don't depend on the methods decompiled before them
+  private boolean canDecompileMethodsInParallel() {
+    if (!DecompilerContext.getOption(IFernflowerPreferences.PARALLEL_METHODS) || !ForkJoinTask.inForkJoinPool() ||
+        !(DecompilerContext.getNamingFactory() instanceof IdentityRenamerFactory)) {
+      return false;
+    }
 
-      RootStatement root = null;
+    int withCode = 0;
+    for (StructMethod mt : classStruct.getMethods()) {
+      if (mt.containsCode()) {
+        withCode++;
+      }
+    }
+    return withCode > 1;
+  }
 
-      boolean isError = false;
+  private MethodWrapper[] decompileMethodsInParallel(int maxSec, boolean testMode) {
+    List<StructMethod> structs = classStruct.getMethods();
+    int count = structs.size();
+    ImportCollector importCollector = DecompilerContext.getImportCollector();
+
+    // each method collects its imports separately, they are merged in the order of the methods afterwards
+    ImportCollector[] imports = new ImportCollector[count];
+    DecompilerContext[] contexts = new DecompilerContext[count];
+    for (int i = 0; i < count; i++) {
+      imports[i] = importCollector.fork();
+      contexts[i] = DecompilerContext.forkMethodContext(imports[i]);
+    }
 
+    MethodWrapper[] wrappers = new MethodWrapper[count];
+    AtomicInteger next = new AtomicInteger();
+    Runnable worker = () -> {
+      DecompilerContext previous = DecompilerContext.getCurrentContext();
       try {
-        if (mt.containsCode()) {
-          if (maxSec == 0 || testMode) {
-            root = MethodProcessorRunnable.codeToJava(mt, md, varProc);
-          }
-          else {
-            MethodProcessorRunnable mtProc = new MethodProcessorRunnable(mt, md, varProc, DecompilerContext.getCurrentContext());
+        int index;
+        while ((index = next.getAndIncrement()) < count) {
+          DecompilerContext.setCurrentContext(contexts[index]);
+          wrappers[index] = decompileMethod(structs.get(index), maxSec, testMode);
+        }
+      }
+      finally {
+        DecompilerContext.setCurrentContext(previous);
+      }
+    };
 
-            Thread mtThread = new Thread(mtProc, "Java decompiler");
-            long stopAt = System.currentTimeMillis() + maxSec * 1000L;
+    List<ForkJoinTask<?>> tasks = new ArrayList<>();
+    int workers = Math.min(ForkJoinTask.getPool().getParallelism(), count);
+    for (int i = 0; i < workers; i++) {
+      tasks.add(ForkJoinTask.adapt(worker));
+    }
+    ForkJoinTask.invokeAll(tasks);
 
-            mtThread.start();
+    for (int i = 0; i < count; i++) {
+      if (!importCollector.replay(imports[i])) {
+        // the method saw different imports than it would have after the methods before it, decompile it again in order
+        wrappers[i] = decompileMethod(structs.get(i), maxSec, testMode);
+      }
+    }
 
-            while (!mtProc.isFinished()) {
-              try {
-                synchronized (mtProc.lock) {
-                  mtProc.lock.wait(200);
-                }
-              }
-              catch (InterruptedException e) {
-                killThread(mtThread);
-                throw e;
-              }
-
-              if (System.currentTimeMillis() >= stopAt) {
-                String message = "Processing time limit exceeded for method " + mt.getName() + ", execution interrupted.";
-                DecompilerContext.getLogger().writeMessage(message, IFernflowerLogger.Severity.ERROR);
-                killThread(mtThread);
-                isError = true;
-                break;
-              }
-            }
+    // leave the context as the last method would have left it
+    MethodWrapper last = wrappers[count - 1];
+    DecompilerContext.startMethod(last.varproc, last.counter);
 
-            if (!isError) {
-              root = mtProc.getResult();
-            }
-          }
+    return wrappers;
+  }
+
+  private MethodWrapper decompileMethod(StructMethod mt, int maxSec, boolean testMode) {
+    DecompilerContext.getLogger().startMethod(mt.getName() + " " + mt.getDescriptor());
+
+    MethodDescriptor md = MethodDescriptor.parseDescriptor(mt, null);
+    VarProcessor varProc = new VarProcessor(mt, md);
+    DecompilerContext.startMethod(varProc);
+
+    VarNamesCollector vc = varProc.getVarNamesCollector();
+    CounterContainer counter = DecompilerContext.getCounterContainer();
+
+    RootStatement root = null;
+
+    boolean isError = false;
+
+    try {
+      if (mt.containsCode()) {
+        if (maxSec == 0 || testMode) {
+          root = MethodProcessor.codeToJava(mt, md, varProc);
         }
         else {
-          boolean thisVar = !mt.hasModifier(CodeConstants.ACC_STATIC);
+          MethodTimeout timeout = MethodTimeout.start(maxSec);
+          try {
+            root = MethodProcessor.codeToJava(mt, md, varProc);
+          }
+          catch (MethodTimeout.TimeExceededError e) {
+            String message = "Processing time limit exceeded for method " + mt.getName() + ", execution interrupted.";
+            DecompilerContext.getLogger().writeMessage(message, IFernflowerLogger.Severity.ERROR);
+            isError = true;
+          }
+          finally {
+            timeout.finish();
+          }
+        }
+      }
+      else {
+        boolean thisVar = !mt.hasModifier(CodeConstants.ACC_STATIC);
+
+        int paramCount = 0;
+        if (thisVar) {
+          varProc.getThisVars().put(new VarVersionPair(0, 0), classStruct.qualifiedName);
+          paramCount = 1;
+        }
+        paramCount += md.params.length;
+
+        int varIndex = 0;
+        for (int i = 0; i < paramCount; i++) {
+          varProc.setVarName(new VarVersionPair(varIndex, 0), vc.getFreeName(varIndex));
 
-          int paramCount = 0;
           if (thisVar) {
-            varProc.getThisVars().put(new VarVersionPair(0, 0), classStruct.qualifiedName);
-            paramCount = 1;
-          }
-          paramCount += md.params.length;
-
-          int varIndex = 0;
-          for (int i = 0; i < paramCount; i++) {
-            varProc.setVarName(new VarVersionPair(varIndex, 0), vc.getFreeName(varIndex));
-
-            if (thisVar) {
-              if (i == 0) {
-                varIndex++;
-              }
-              else {
-                varIndex += md.params[i - 1].stackSize;
-              }
+            if (i == 0) {
+              varIndex++;
             }
             else {
-              varIndex += md.params[i].stackSize;
+              varIndex += md.params[i - 1].stackSize;
             }
           }
+          else {
+            varIndex += md.params[i].stackSize;
+          }
         }
       }
-      catch (Throwable t) {
-        String message = "Method " + mt.getName() + " " + mt.getDescriptor() + " couldn't be decompiled.";
-        DecompilerContext.getLogger().writeMessage(message, IFernflowerLogger.Severity.WARN, t);
-        isError = true;
-      }
+    }
+    catch (Throwable t) {
+      String message = "Method " + mt.getName() + " " + mt.getDescriptor() + " couldn't be decompiled.";
+      DecompilerContext.getLogger().writeMessage(message, IFernflowerLogger.Severity.WARN, t);
+      isError = true;
+    }
 
-      MethodWrapper methodWrapper = new MethodWrapper(root, varProc, mt, counter);
-      methodWrapper.decompiledWithErrors = isError;
-
-      methods.addWithKey(methodWrapper, InterpreterUtil.makeUniqueKey(mt.getName(), mt.getDescriptor()));
-
-      if (!isError) {
-        // rename vars so that no one has the same name as a field
-        VarNamesCollector namesCollector = new VarNamesCollector();
-        classStruct.getFields().forEach(f -> namesCollector.addName(f.getName()));
-        varProc.refreshVarNames(namesCollector);
-
-        // if debug information present and should be used
-        if (DecompilerContext.getOption(IFernflowerPreferences.USE_DEBUG_VAR_NAMES)) {
-          StructLocalVariableTableAttribute attr = mt.getLocalVariableAttr();
-          if (attr != null) {
-            // only param names here
-            varProc.setDebugVarNames(attr.getMapNames());
-
-            /*
-            // the rest is here
-            methodWrapper.getOrBuildGraph().iterateExprents(exprent -> {
-              List<Exprent> lst = exprent.getAllExprents(true);
-              lst.add(exprent);
-              lst.stream()
-                .filter(e -> e.type == Exprent.EXPRENT_VAR)
-                .forEach(e -> {
-                  VarExprent varExprent = (VarExprent)e;
-                  String name = varExprent.getDebugName(mt);
-                  if (name != null) {
-                    varProc.setVarName(varExprent.getVarVersionPair(), name);
-                  }
-                });
-              return 0;
-            });
-            */
-          }
+    MethodWrapper methodWrapper = new MethodWrapper(root, varProc, mt, counter);
+    methodWrapper.decompiledWithErrors = isError;
+
+    if (!isError) {
+      // rename vars so that no one has the same name as a field
+      VarNamesCollector namesCollector = new VarNamesCollector();
+      classStruct.getFields().forEach(f -> namesCollector.addName(f.getName()));
+      varProc.refreshVarNames(namesCollector);
+
+      // if debug information present and should be used
+      if (DecompilerContext.getOption(IFernflowerPreferences.USE_DEBUG_VAR_NAMES)) {
+        StructLocalVariableTableAttribute attr = mt.getLocalVariableAttr();
+        if (attr != null) {
+          // only param names here
+          varProc.setDebugVarNames(attr.getMapNames());
+
+          /*
+          // the rest is here
+          methodWrapper.getOrBuildGraph().iterateExprents(exprent -> {
+            List<Exprent> lst = exprent.getAllExprents(true);
+            lst.add(exprent);
+            lst.stream()
+              .filter(e -> e.type == Exprent.EXPRENT_VAR)
+              .forEach(e -> {
+                VarExprent varExprent = (VarExprent)e;
+                String name = varExprent.getDebugName(mt);
+                if (name != null) {
+                  varProc.setVarName(varExprent.getVarVersionPair(), name);
+                }
+              });
+            return 0;
+          });
+          */
         }
       }
-
-      DecompilerContext.getLogger().endMethod();
     }
 
-    DecompilerContext.getLogger().endClass();
-  }
+    DecompilerContext.getLogger().endMethod();
 
-  @SuppressWarnings("deprecation")
-  private static void killThread(Thread thread) {
-    thread.stop();
+    return methodWrapper;
   }
 
   public MethodWrapper getMethodWrapper(String name, String descriptor) {
@@ -25,125 +25,18 @@ import org.jetbrains.java.decompiler.struct.gen.MethodDescriptor;
 
 import java.io.IOException;
 
-public class MethodProcessorRunnable implements Runnable {
-  public final Object lock = new Object();
-
-  private final StructMethod method;
-  private final MethodDescriptor methodDescriptor;
-  private final VarProcessor varProc;
-  private final DecompilerContext parentContext;
-
-  private volatile RootStatement root;
-  private volatile Throwable error;
-  private volatile boolean finished = false;
-
-  public MethodProcessorRunnable(StructMethod method,
-                                 MethodDescriptor methodDescriptor,
-                                 VarProcessor varProc,
-                                 DecompilerContext parentContext) {
-    this.method = method;
-    this.methodDescriptor = methodDescriptor;
-    this.varProc = varProc;
-    this.parentContext = parentContext;
-  }
-
-  @Override
-  public void run() {
-    error = null;
-    root = null;
-
-    try {
-      DecompilerContext.setCurrentContext(parentContext);
-      root = codeToJava(method, methodDescriptor, varProc);
-    }
-    catch (Throwable t) {
-      error = t;
-    }
-    finally {
-      DecompilerContext.setCurrentContext(null);
-    }
-
-    finished = true;
-    synchronized (lock) {
-      lock.notifyAll();
-    }
-  }
-
+public class MethodProcessor {
   public static RootStatement codeToJava(StructMethod mt, MethodDescriptor md, VarProcessor varProc) throws IOException {
     StructClass cl = mt.getClassStruct();
 
     boolean isInitializer = CodeConstants.CLINIT_NAME.equals(mt.getName()); // for now static initializer only
 
-    mt.expandData();
-    InstructionSequence seq = mt.getInstructionSequence();
-    ControlFlowGraph graph = new ControlFlowGraph(seq);
-
-    DeadCodeHelper.removeDeadBlocks(graph);
-    graph.inlineJsr(mt);
-
-    // TODO: move to the start, before jsr inlining
-    DeadCodeHelper.connectDummyExitBlock(graph);
-
-    DeadCodeHelper.removeGotos(graph);
-
-    ExceptionDeobfuscator.removeCircularRanges(graph);
-
-    ExceptionDeobfuscator.restorePopRanges(graph);
-
-    if (DecompilerContext.getOption(IFernflowerPreferences.REMOVE_EMPTY_RANGES)) {
-      ExceptionDeobfuscator.removeEmptyRanges(graph);
-    }
-
-    if (DecompilerContext.getOption(IFernflowerPreferences.ENSURE_SYNCHRONIZED_MONITOR)) {
-      // special case: search for 'synchronized' ranges w/o monitorexit instruction (as generated by Kotlin and Scala)
-      DeadCodeHelper.extendSynchronizedRangeToMonitorexit(graph);
-    }
-
-    if (DecompilerContext.getOption(IFernflowerPreferences.NO_EXCEPTIONS_RETURN)) {
-      // special case: single return instruction outside of a protected range
-      DeadCodeHelper.incorporateValueReturns(graph);
-    }
-
-    //		ExceptionDeobfuscator.restorePopRanges(graph);
-    ExceptionDeobfuscator.insertEmptyExceptionHandlerBlocks(graph);
-
-    DeadCodeHelper.mergeBasicBlocks(graph);
-
-    DecompilerContext.getCounterContainer().setCounter(CounterContainer.VAR_COUNTER, mt.getLocalVariables());
-
-    if (ExceptionDeobfuscator.hasObfuscatedExceptions(graph)) {
-      DecompilerContext.getLogger().writeMessage("Heavily obfuscated exception ranges found!", IFernflowerLogger.Severity.WARN);
-      if (!ExceptionDeobfuscator.handleMultipleEntryExceptionRanges(graph)) {
-        DecompilerContext.getLogger().writeMessage("Found multiple entry exception ranges which could not be splitted", IFernflowerLogger.Severity.WARN);
-      }
-      ExceptionDeobfuscator.insertDummyExceptionHandlerBlocks(graph, cl.getBytecodeVersion());
-    }
-
-    RootStatement root = DomHelper.parseGraph(graph, mt);
-
-    FinallyProcessor fProc = new FinallyProcessor(md, varProc);
-    while (fProc.iterateGraph(mt, root, graph)) {
-      root = DomHelper.parseGraph(graph, mt);
-    }
-
-    // remove synchronized exception handler
-    // not until now because of comparison between synchronized statements in the finally cycle
-    DomHelper.removeSynchronizedHandler(root);
-
-    //		LabelHelper.lowContinueLabels(root, new HashSet<StatEdge>());
-
-    SequenceHelper.condenseSequences(root);
-
-    ClearStructHelper.clearStatements(root);
-
-    ExprProcessor proc = new ExprProcessor(md, varProc);
-    proc.processStatement(root, cl);
-
-    SequenceHelper.condenseSequences(root);
+    RootStatement root = buildStatements(mt, md, varProc);
 
     StackVarsProcessor stackProc = new StackVarsProcessor();
 
     do {
+      MethodTimeout.checkTimeout();
       stackProc.simplifyStackVars(root, mt, cl);
       varProc.setVarVersions(root);
     }
@@ -153,6 +46,8 @@ public class MethodProcessorRunnable implements Runnable {
       LabelHelper.cleanUpEdges(root);
 
       while (true) {
+        MethodTimeout.checkTimeout();
+
         if (EliminateLoopsHelper.eliminateLoops(root, cl) || LoopExtractHelper.extractLoops(root)) {
           continue;
         }
@@ -211,16 +106,82 @@ public class MethodProcessorRunnable implements Runnable {
     return root;
   }
 
-  public RootStatement getResult() throws Throwable {
-    Throwable t = error;
-    if (t != null) throw t;
-    return root;
-  }
+  /**
+   * Builds the statement tree of a method and its expressions, before any stack variables are simplified.
+   */
+  public static RootStatement buildStatements(StructMethod mt, MethodDescriptor md, VarProcessor varProc) throws IOException {
+    StructClass cl = mt.getClassStruct();
 
-  public boolean isFinished() {
-    return finished;
-  }
+    mt.expandData();
+    InstructionSequence seq = mt.getInstructionSequence();
+    ControlFlowGraph graph = new ControlFlowGraph(seq);
+
+    DeadCodeHelper.removeDeadBlocks(graph);
+    graph.inlineJsr(mt);
+
+    // TODO: move to the start, before jsr inlining
+    DeadCodeHelper.connectDummyExitBlock(graph);
+
+    DeadCodeHelper.removeGotos(graph);
+
+    ExceptionDeobfuscator.removeCircularRanges(graph);
+
+    ExceptionDeobfuscator.restorePopRanges(graph);
+
+    if (DecompilerContext.getOption(IFernflowerPreferences.REMOVE_EMPTY_RANGES)) {
+      ExceptionDeobfuscator.removeEmptyRanges(graph);
+    }
+
+    if (DecompilerContext.getOption(IFernflowerPreferences.ENSURE_SYNCHRONIZED_MONITOR)) {
+      // special case: search for 'synchronized' ranges w/o monitorexit instruction (as generated by Kotlin and Scala)
+      DeadCodeHelper.extendSynchronizedRangeToMonitorexit(graph);
+    }
+
+    if (DecompilerContext.getOption(IFernflowerPreferences.NO_EXCEPTIONS_RETURN)) {
+      // special case: single return instruction outside of a protected range
+      DeadCodeHelper.incorporateValueReturns(graph);
+    }
+
+    //		ExceptionDeobfuscator.restorePopRanges(graph);
+    ExceptionDeobfuscator.insertEmptyExceptionHandlerBlocks(graph);
+
+    DeadCodeHelper.mergeBasicBlocks(graph);
+
+    DecompilerContext.getCounterContainer().setCounter(CounterContainer.VAR_COUNTER, mt.getLocalVariables());
 
+    if (ExceptionDeobfuscator.hasObfuscatedExceptions(graph)) {
+      DecompilerContext.getLogger().writeMessage("Heavily obfuscated exception ranges found!", IFernflowerLogger.Severity.WARN);
+      if (!ExceptionDeobfuscator.handleMultipleEntryExceptionRanges(graph)) {
+        DecompilerContext.getLogger().writeMessage("Found multiple entry exception ranges which could not be splitted", IFernflowerLogger.Severity.WARN);
+      }
+      ExceptionDeobfuscator.insertDummyExceptionHandlerBlocks(graph, cl.getBytecodeVersion());
+    }
+
+    RootStatement root = DomHelper.parseGraph(graph, mt);
+
+    FinallyProcessor fProc = new FinallyProcessor(md, varProc);
+    while (fProc.iterateGraph(mt, root, graph)) {
+      MethodTimeout.checkTimeout();
+      root = DomHelper.parseGraph(graph, mt);
+    }
+
+    // remove synchronized exception handler
+    // not until now because of comparison between synchronized statements in the finally cycle
+    DomHelper.removeSynchronizedHandler(root);
+
+    //		LabelHelper.lowContinueLabels(root, new HashSet<StatEdge>());
+
+    SequenceHelper.condenseSequences(root);
+
+    ClearStructHelper.clearStatements(root);
+
+    ExprProcessor proc = new ExprProcessor(md, varProc);
+    proc.processStatement(root, cl);
+
+    SequenceHelper.condenseSequences(root);
+
+    return root;
+  }
 
   public static void cleanSynchronizedVar(Statement stat) {
     for (Statement st : stat.getStats()) {
@@ -0,0 +1,80 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package org.jetbrains.java.decompiler.main.rels;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time limit of the method being decompiled on the current thread ({@link org.jetbrains.java.decompiler.main.extern.IFernflowerPreferences#MAX_PROCESSING_METHOD}).
+ *
+ * The method is decompiled on the calling thread. One shared watchdog thread marks it as expired once its time is up,
+ * and the next {@link #checkTimeout()} in one of the long-running loops of the decompiler throws {@link TimeExceededError}.
+ * Unlike the Thread.stop this replaces, the limit is only enforced at those checks: a single pass between two of them runs to its end.
+ */
+public final class MethodTimeout {
+  private static final ScheduledThreadPoolExecutor WATCHDOG = createWatchdog();
+
+  private static final ThreadLocal<MethodTimeout> CURRENT = new ThreadLocal<>();
+
+  private final MethodTimeout previous;
+  private final ScheduledFuture<?> expiry;
+  private volatile boolean expired;
+
+  private MethodTimeout(int seconds) {
+    previous = CURRENT.get();
+    expiry = WATCHDOG.schedule(() -> { expired = true; }, seconds, TimeUnit.SECONDS);
+  }
+
+  private static ScheduledThreadPoolExecutor createWatchdog() {
+    ScheduledThreadPoolExecutor watchdog = new ScheduledThreadPoolExecutor(1, r -> {
+      Thread thread = new Thread(r, "Java decompiler watchdog");
+      thread.setDaemon(true);
+      return thread;
+    });
+    // nearly every method finishes in time, so drop its expiry from the queue right away instead of when it would have run
+    watchdog.setRemoveOnCancelPolicy(true);
+    return watchdog;
+  }
+
+  /**
+   * Starts the time limit of a method on the current thread; it has to be ended with {@link #finish()}.
+   * A limit started while another one is running, e.g. by a method decompiled on a pool thread waiting for other tasks, replaces it until then.
+   */
+  public static MethodTimeout start(int seconds) {
+    MethodTimeout timeout = new MethodTimeout(seconds);
+    CURRENT.set(timeout);
+    return timeout;
+  }
+
+  public void finish() {
+    expiry.cancel(false);
+    if (previous != null) {
+      CURRENT.set(previous);
+    }
+    else {
+      CURRENT.remove();
+    }
+  }
+
+  /**
+   * Stops the method being decompiled on the current thread if its time is up.
+   */
+  public static void checkTimeout() {
+    MethodTimeout timeout = CURRENT.get();
+    if (timeout != null && timeout.expired) {
+      throw new TimeExceededError();
+    }
+  }
+
+  /**
+   * An error rather than an exception, like the ThreadDeath the limit was enforced with before, so that handlers on the way don't swallow it.
+   */
+  public static class TimeExceededError extends Error {
+    private static final long serialVersionUID = 1L;
+
+    private TimeExceededError() {
+      super(null, null, false, false);
+    }
+  }
+}
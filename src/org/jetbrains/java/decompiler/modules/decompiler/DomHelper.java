@@ -6,14 +6,13 @@ import org.jetbrains.java.decompiler.code.cfg.ControlFlowGraph;
 import org.jetbrains.java.decompiler.code.cfg.ExceptionRangeCFG;
 import org.jetbrains.java.decompiler.main.DecompilerContext;
 import org.jetbrains.java.decompiler.main.extern.IFernflowerLogger;
+import org.jetbrains.java.decompiler.main.rels.MethodTimeout;
+import org.jetbrains.java.decompiler.modules.decompiler.decompose.FastDominatorTree;
 import org.jetbrains.java.decompiler.modules.decompiler.decompose.FastExtendedPostdominanceHelper;
 import org.jetbrains.java.decompiler.modules.decompiler.deobfuscator.IrreducibleCFGDeobfuscator;
 import org.jetbrains.java.decompiler.modules.decompiler.stats.*;
 import org.jetbrains.java.decompiler.struct.StructMethod;
 import org.jetbrains.java.decompiler.util.DotExporter;
-import org.jetbrains.java.decompiler.util.FastFixedSetFactory;
-import org.jetbrains.java.decompiler.util.FastFixedSetFactory.FastFixedSet;
-import org.jetbrains.java.decompiler.util.InterpreterUtil;
 import org.jetbrains.java.decompiler.util.VBStyleCollection;
 
 import java.util.*;
@@ -91,78 +90,68 @@ public class DomHelper {
 
   public static VBStyleCollection<List<Integer>, Integer> calcPostDominators(Statement container) {
 
-    HashMap<Statement, FastFixedSet<Statement>> lists = new HashMap<>();
-
     StrongConnectivityHelper schelper = new StrongConnectivityHelper(container);
     List<List<Statement>> components = schelper.getComponents();
 
     List<Statement> lstStats = container.getPostReversePostOrderList(StrongConnectivityHelper.getExitReps(components));
 
-    FastFixedSetFactory<Statement> factory = new FastFixedSetFactory<>(lstStats);
-
-    FastFixedSet<Statement> setFlagNodes = factory.spawnEmptySet();
-    setFlagNodes.setAllElements();
+    HashMap<Statement, Integer> mapIds = new HashMap<>();
+    for (Statement stat : lstStats) {
+      mapIds.put(stat, mapIds.size());
+    }
 
-    FastFixedSet<Statement> initSet = factory.spawnEmptySet();
-    initSet.setAllElements();
+    // the statements of an exit component postdominate each other, each component is a single root of the postdominator tree
+    int[] reps = new int[lstStats.size()];
+    for (int i = 0; i < reps.length; i++) {
+      reps[i] = i;
+    }
 
+    HashMap<Integer, List<Statement>> mapExitComponents = new HashMap<>();
     for (List<Statement> lst : components) {
-      FastFixedSet<Statement> tmpSet;
-
       if (StrongConnectivityHelper.isExitComponent(lst)) {
-        tmpSet = factory.spawnEmptySet();
-        tmpSet.addAll(lst);
-      }
-      else {
-        tmpSet = initSet.getCopy();
+        int rep = mapIds.get(lst.get(0));
+        for (Statement stat : lst) {
+          reps[mapIds.get(stat)] = rep;
+        }
+        mapExitComponents.put(rep, lst);
       }
+    }
 
-      for (Statement stat : lst) {
-        lists.put(stat, tmpSet);
+    int[] roots = new int[mapExitComponents.size()];
+    int rootCount = 0;
+    for (int i = 0; i < reps.length; i++) {
+      if (mapExitComponents.containsKey(i)) {
+        roots[rootCount++] = i;
       }
     }
 
-    do {
-
-      for (Statement stat : lstStats) {
-
-        if (!setFlagNodes.contains(stat)) {
-          continue;
-        }
-        setFlagNodes.remove(stat);
-
-        FastFixedSet<Statement> doms = lists.get(stat);
-        FastFixedSet<Statement> domsSuccs = factory.spawnEmptySet();
-
-        List<Statement> lstSuccs = stat.getNeighbours(StatEdge.TYPE_REGULAR, Statement.DIRECTION_FORWARD);
-        for (int j = 0; j < lstSuccs.size(); j++) {
-          Statement succ = lstSuccs.get(j);
-          FastFixedSet<Statement> succlst = lists.get(succ);
-
-          if (j == 0) {
-            domsSuccs.union(succlst);
-          }
-          else {
-            domsSuccs.intersection(succlst);
-          }
-        }
-
-        if (!domsSuccs.contains(stat)) {
-          domsSuccs.add(stat);
+    // the postdominators are the dominators of the reversed graph
+    List<List<Integer>> lstReversedSuccs = new ArrayList<>(lstStats.size());
+    for (int i = 0; i < lstStats.size(); i++) {
+      lstReversedSuccs.add(new ArrayList<>());
+    }
+    for (int i = 0; i < lstStats.size(); i++) {
+      if (reps[i] != i || mapExitComponents.containsKey(i)) {
+        continue; // no edges out of an exit component
+      }
+      for (Statement succ : lstStats.get(i).getNeighbours(StatEdge.TYPE_REGULAR, Statement.DIRECTION_FORWARD)) {
+        Integer id = mapIds.get(succ);
+        if (id != null) {
+          lstReversedSuccs.get(reps[id]).add(i);
         }
+      }
+    }
 
-        if (!InterpreterUtil.equalObjects(domsSuccs, doms)) {
-
-          lists.put(stat, domsSuccs);
-
-          List<Statement> lstPreds = stat.getNeighbours(StatEdge.TYPE_REGULAR, Statement.DIRECTION_BACKWARD);
-          for (Statement pred : lstPreds) {
-            setFlagNodes.add(pred);
-          }
-        }
+    int[][] reversedSuccs = new int[lstStats.size()][];
+    for (int i = 0; i < reversedSuccs.length; i++) {
+      List<Integer> lst = lstReversedSuccs.get(i);
+      reversedSuccs[i] = new int[lst.size()];
+      for (int j = 0; j < lst.size(); j++) {
+        reversedSuccs[i][j] = lst.get(j);
       }
     }
-    while (!setFlagNodes.isEmpty());
+
+    FastDominatorTree tree = FastDominatorTree.ofSuccessors(reversedSuccs, roots);
 
     VBStyleCollection<List<Integer>, Integer> ret = new VBStyleCollection<>();
     List<Statement> lstRevPost = container.getReversePostOrderList(); // sort order crucial!
@@ -175,8 +164,20 @@ public class DomHelper {
     for (Statement st : lstStats) {
 
       List<Integer> lstPosts = new ArrayList<>();
-      for (Statement stt : lists.get(st)) {
-        lstPosts.add(stt.id);
+      int node = reps[mapIds.get(st)];
+      while (node >= 0) {
+        List<Statement> lstComponent = mapExitComponents.get(node);
+        if (lstComponent != null) {
+          for (Statement stt : lstComponent) {
+            lstPosts.add(stt.id);
+          }
+        }
+        else {
+          lstPosts.add(lstStats.get(node).id);
+        }
+
+        int idom = tree.getIDom(node);
+        node = idom == node ? -1 : idom;
       }
 
       lstPosts.sort(Comparator.comparing(mapSortOrder::get));
@@ -579,6 +580,7 @@ public class DomHelper {
     boolean found, success = false;
 
     do {
+      MethodTimeout.checkTimeout();
       found = false;
 
       List<Statement> lstStats = stat.getPostReversePostOrderList();
@@ -4,6 +4,7 @@ package org.jetbrains.java.decompiler.modules.decompiler;
 import org.jetbrains.java.decompiler.code.cfg.BasicBlock;
 import org.jetbrains.java.decompiler.main.DecompilerContext;
 import org.jetbrains.java.decompiler.main.collectors.CounterContainer;
+import org.jetbrains.java.decompiler.main.rels.MethodTimeout;
 import org.jetbrains.java.decompiler.modules.decompiler.exps.ArrayExprent;
 import org.jetbrains.java.decompiler.modules.decompiler.exps.AssignmentExprent;
 import org.jetbrains.java.decompiler.modules.decompiler.exps.Exprent;
@@ -19,7 +20,9 @@ import java.util.Set;
 
 public class MergeHelper {
   public static void enhanceLoops(Statement root) {
-    while (enhanceLoopsRec(root)) /**/;
+    while (enhanceLoopsRec(root)) {
+      MethodTimeout.checkTimeout();
+    }
     SequenceHelper.condenseSequences(root);
   }
 
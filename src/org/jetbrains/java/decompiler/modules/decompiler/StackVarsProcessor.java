@@ -4,6 +4,7 @@ package org.jetbrains.java.decompiler.modules.decompiler;
 import org.jetbrains.java.decompiler.code.CodeConstants;
 import org.jetbrains.java.decompiler.main.ClassesProcessor.ClassNode;
 import org.jetbrains.java.decompiler.main.DecompilerContext;
+import org.jetbrains.java.decompiler.main.rels.MethodTimeout;
 import org.jetbrains.java.decompiler.modules.decompiler.exps.*;
 import org.jetbrains.java.decompiler.modules.decompiler.sforms.*;
 import org.jetbrains.java.decompiler.modules.decompiler.stats.DoStatement;
@@ -17,7 +18,7 @@ import org.jetbrains.java.decompiler.struct.StructClass;
 import org.jetbrains.java.decompiler.struct.StructMethod;
 import org.jetbrains.java.decompiler.struct.gen.MethodDescriptor;
 import org.jetbrains.java.decompiler.struct.gen.VarType;
-import org.jetbrains.java.decompiler.util.FastSparseSetFactory.FastSparseSet;
+import org.jetbrains.java.decompiler.util.FastIntSet;
 import org.jetbrains.java.decompiler.util.InterpreterUtil;
 import org.jetbrains.java.decompiler.util.SFormsFastMapDirect;
 
@@ -31,6 +32,7 @@ public class StackVarsProcessor {
     SSAUConstructorSparseEx ssau = null;
 
     while (true) {
+      MethodTimeout.checkTimeout();
       boolean found = false;
       boolean first = ssau == null;
 
@@ -209,8 +211,8 @@ public class StackVarsProcessor {
     for (VarVersionPair varpaar : setVars) {
       VarVersionNode node = ssau.getSsuversions().nodes.getWithKey(varpaar);
 
-      for (Iterator<Entry<Integer, FastSparseSet<Integer>>> itent = node.live.entryList().iterator(); itent.hasNext(); ) {
-        Entry<Integer, FastSparseSet<Integer>> ent = itent.next();
+      for (Iterator<Entry<Integer, FastIntSet>> itent = node.live.entryList().iterator(); itent.hasNext(); ) {
+        Entry<Integer, FastIntSet> ent = itent.next();
 
         Integer key = ent.getKey();
 
@@ -218,7 +220,7 @@ public class StackVarsProcessor {
           itent.remove();
         }
         else {
-          FastSparseSet<Integer> set = ent.getValue();
+          FastIntSet set = ent.getValue();
 
           set.complement(livemap.get(key));
           if (set.isEmpty()) {
@@ -600,7 +602,7 @@ public class StackVarsProcessor {
     }
 
     for (Entry<Integer, Set<VarVersionPair>> ent : mapVars.entrySet()) {
-      FastSparseSet<Integer> liveverset = mapLiveVars.get(ent.getKey());
+      FastIntSet liveverset = mapLiveVars.get(ent.getKey());
       if (liveverset == null) {
         return false;
       }
@@ -0,0 +1,288 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package org.jetbrains.java.decompiler.modules.decompiler.decompose;
+
+import org.jetbrains.java.decompiler.main.rels.MethodTimeout;
+
+import java.util.Arrays;
+
+/**
+ * Dominator tree of a graph with the nodes numbered 0..n-1, computed with the algorithm of Cooper, Harvey and Kennedy
+ * ("A Simple, Fast Dominance Algorithm") over int arrays.
+ *
+ * The graph may have several roots. A node which is not dominated by any other node (a root or a merging point of the
+ * trees of two roots) is its own immediate dominator.
+ */
+public class FastDominatorTree {
+  private static final int[] NO_NODES = new int[0];
+
+  // node -> position in the processing order, -1 if not reachable
+  private final int[] positions;
+
+  // position -> node
+  private final int[] order;
+
+  // position -> position of the immediate dominator
+  private final int[] idoms;
+
+  // position -> first and last preorder number of its subtree in the dominator tree
+  private final int[] subtreeStart;
+  private final int[] subtreeEnd;
+
+  private FastDominatorTree(int[] positions, int[] order, int[][] preds, boolean[] roots) {
+    this.positions = positions;
+    this.order = order;
+
+    idoms = calcIDoms(preds, roots);
+
+    int size = order.length;
+    subtreeStart = new int[size];
+    subtreeEnd = new int[size];
+    numberSubtrees();
+  }
+
+  /**
+   * Dominators of a graph whose nodes are already numbered in the order to process them in, i.e. in reverse post-order.
+   *
+   * @param preds predecessors of each node
+   * @param roots whether a node is a root
+   */
+  public static FastDominatorTree ofOrderedPredecessors(int[][] preds, boolean[] roots) {
+    int[] identity = new int[preds.length];
+    for (int i = 0; i < identity.length; i++) {
+      identity[i] = i;
+    }
+    return new FastDominatorTree(identity, identity, preds, roots);
+  }
+
+  /**
+   * Dominators of a graph given by the successors of its nodes. The nodes which can't be reached from the roots
+   * are not part of the tree.
+   *
+   * @param succs successors of each node
+   * @param roots the roots, in the order to traverse them in
+   */
+  public static FastDominatorTree ofSuccessors(int[][] succs, int[] roots) {
+    int size = succs.length;
+
+    int[] order = getReversePostOrder(succs, roots);
+    int[] positions = new int[size];
+    Arrays.fill(positions, -1);
+    for (int i = 0; i < order.length; i++) {
+      positions[order[i]] = i;
+    }
+
+    // predecessors of the reachable nodes by position
+    int[] predCounts = new int[order.length];
+    for (int node : order) {
+      for (int succ : succs[node]) {
+        predCounts[positions[succ]]++;
+      }
+    }
+    int[][] preds = new int[order.length][];
+    for (int i = 0; i < preds.length; i++) {
+      preds[i] = predCounts[i] == 0 ? NO_NODES : new int[predCounts[i]];
+      predCounts[i] = 0;
+    }
+    for (int i = 0; i < order.length; i++) {
+      for (int succ : succs[order[i]]) {
+        int position = positions[succ];
+        preds[position][predCounts[position]++] = i;
+      }
+    }
+
+    boolean[] isRoot = new boolean[order.length];
+    for (int root : roots) {
+      isRoot[positions[root]] = true;
+    }
+
+    return new FastDominatorTree(positions, order, preds, isRoot);
+  }
+
+  private static int[] getReversePostOrder(int[][] succs, int[] roots) {
+    int size = succs.length;
+    boolean[] visited = new boolean[size];
+    int[] postOrder = new int[size];
+    int count = 0;
+
+    int[] stackNode = new int[size];
+    int[] stackIndex = new int[size];
+
+    for (int root : roots) {
+      if (visited[root]) {
+        continue;
+      }
+      visited[root] = true;
+
+      int depth = 0;
+      stackNode[0] = root;
+      stackIndex[0] = 0;
+
+      while (depth >= 0) {
+        int node = stackNode[depth];
+        int[] nodeSuccs = succs[node];
+
+        int index = stackIndex[depth];
+        while (index < nodeSuccs.length && visited[nodeSuccs[index]]) {
+          index++;
+        }
+
+        if (index < nodeSuccs.length) {
+          int succ = nodeSuccs[index];
+          visited[succ] = true;
+          stackIndex[depth] = index + 1;
+          depth++;
+          stackNode[depth] = succ;
+          stackIndex[depth] = 0;
+        }
+        else {
+          postOrder[count++] = node;
+          depth--;
+        }
+      }
+    }
+
+    int[] order = new int[count];
+    for (int i = 0; i < count; i++) {
+      order[i] = postOrder[count - 1 - i];
+    }
+    return order;
+  }
+
+  private static int[] calcIDoms(int[][] preds, boolean[] roots) {
+    int size = preds.length;
+
+    // -1 for the nodes not processed yet
+    int[] idoms = new int[size];
+    Arrays.fill(idoms, -1);
+
+    boolean changed;
+    do {
+      MethodTimeout.checkTimeout();
+
+      changed = false;
+
+      for (int node = 0; node < size; node++) {
+        int idom = -1;
+
+        if (!roots[node]) {
+          boolean first = true;
+          for (int pred : preds[node]) {
+            if (idoms[pred] >= 0) {
+              idom = first ? pred : getCommonIDom(idom, pred, idoms);
+              first = false;
+              if (idom < 0) {
+                break; // no idom found: merging point of two trees
+              }
+            }
+          }
+        }
+
+        if (idom < 0) {
+          idom = node;
+        }
+
+        if (idoms[node] != idom) {
+          idoms[node] = idom;
+          changed = true;
+        }
+      }
+    }
+    while (changed);
+
+    return idoms;
+  }
+
+  // -1 if the nodes are in different trees
+  private static int getCommonIDom(int node1, int node2, int[] idoms) {
+    while (node1 != node2) {
+      if (node1 > node2) {
+        int idom = idoms[node1];
+        if (idom == node1) {
+          return -1;
+        }
+        node1 = idom;
+      }
+      else {
+        int idom = idoms[node2];
+        if (idom == node2) {
+          return -1;
+        }
+        node2 = idom;
+      }
+    }
+    return node1;
+  }
+
+  private void numberSubtrees() {
+    int size = idoms.length;
+
+    // children of each position in the dominator tree, in the arrays of the tree
+    int[] firstChild = new int[size];
+    int[] nextSibling = new int[size];
+    Arrays.fill(firstChild, -1);
+    for (int position = size - 1; position >= 0; position--) {
+      int idom = idoms[position];
+      if (idom != position) {
+        nextSibling[position] = firstChild[idom];
+        firstChild[idom] = position;
+      }
+      else {
+        nextSibling[position] = -1;
+      }
+    }
+
+    int[] stack = new int[size];
+    int counter = 0;
+
+    for (int root = 0; root < size; root++) {
+      if (idoms[root] != root) {
+        continue;
+      }
+
+      int depth = 0;
+      stack[0] = root;
+      subtreeStart[root] = counter++;
+
+      while (depth >= 0) {
+        int position = stack[depth];
+        int child = firstChild[position];
+        if (child >= 0) {
+          firstChild[position] = nextSibling[child];
+          subtreeStart[child] = counter++;
+          stack[++depth] = child;
+        }
+        else {
+          subtreeEnd[position] = counter - 1;
+          depth--;
+        }
+      }
+    }
+  }
+
+  public boolean isReachable(int node) {
+    return positions[node] >= 0;
+  }
+
+  /**
+   * @return the immediate dominator of the node, the node itself if no other node dominates it or -1 if it is not reachable
+   */
+  public int getIDom(int node) {
+    int position = positions[node];
+    return position < 0 ? -1 : order[idoms[position]];
+  }
+
+  public boolean isDominator(int node, int dom) {
+    if (node == dom) {
+      return true;
+    }
+
+    int position = positions[node];
+    int domPosition = positions[dom];
+    if (position < 0 || domPosition < 0) {
+      return false;
+    }
+
+    int start = subtreeStart[position];
+    return start >= subtreeStart[domPosition] && start <= subtreeEnd[domPosition];
+  }
+}
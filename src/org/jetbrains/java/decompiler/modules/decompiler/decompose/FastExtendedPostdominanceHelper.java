@@ -1,6 +1,7 @@
 // Copyright 2000-2017 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
 package org.jetbrains.java.decompiler.modules.decompiler.decompose;
 
+import org.jetbrains.java.decompiler.main.rels.MethodTimeout;
 import org.jetbrains.java.decompiler.modules.decompiler.StatEdge;
 import org.jetbrains.java.decompiler.modules.decompiler.stats.Statement;
 import org.jetbrains.java.decompiler.util.FastFixedSetFactory;
@@ -251,6 +252,7 @@ public class FastExtendedPostdominanceHelper {
 
   private void iterateReachability(IReachabilityAction action, int edgetype) {
     while (true) {
+      MethodTimeout.checkTimeout();
       boolean iterate = false;
 
       HashMap<Integer, FastFixedSet<Integer>> mapSets = new HashMap<>();
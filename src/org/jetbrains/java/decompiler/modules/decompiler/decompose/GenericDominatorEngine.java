@@ -1,18 +1,20 @@
 // Copyright 2000-2017 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
 package org.jetbrains.java.decompiler.modules.decompiler.decompose;
 
-import org.jetbrains.java.decompiler.util.VBStyleCollection;
-
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public class GenericDominatorEngine {
 
   private final IGraph graph;
 
-  private final VBStyleCollection<IGraphNode, IGraphNode> colOrderedIDoms = new VBStyleCollection<>();
+  // node, position in the reverse post-order
+  private final Map<IGraphNode, Integer> mapPositions = new HashMap<>();
 
-  private Set<? extends IGraphNode> setRoots;
+  private FastDominatorTree tree;
 
   public GenericDominatorEngine(IGraph graph) {
     this.graph = graph;
@@ -22,113 +24,49 @@ public class GenericDominatorEngine {
     calcIDoms();
   }
 
-  private void orderNodes() {
-
-    setRoots = graph.getRoots();
-
-    for (IGraphNode node : graph.getReversePostOrderList()) {
-      colOrderedIDoms.addWithKey(null, node);
-    }
-  }
-
-  private static IGraphNode getCommonIDom(IGraphNode node1, IGraphNode node2, VBStyleCollection<IGraphNode, IGraphNode> orderedIDoms) {
+  private void calcIDoms() {
 
-    IGraphNode nodeOld;
+    Set<? extends IGraphNode> setRoots = graph.getRoots();
+    List<? extends IGraphNode> lstNodes = graph.getReversePostOrderList();
 
-    if (node1 == null) {
-      return node2;
-    }
-    else if (node2 == null) {
-      return node1;
+    for (IGraphNode node : lstNodes) {
+      mapPositions.put(node, mapPositions.size());
     }
 
-    int index1 = orderedIDoms.getIndexByKey(node1);
-    int index2 = orderedIDoms.getIndexByKey(node2);
+    int[][] preds = new int[lstNodes.size()][];
+    boolean[] roots = new boolean[lstNodes.size()];
 
-    while (index1 != index2) {
-      if (index1 > index2) {
-        nodeOld = node1;
-        node1 = orderedIDoms.getWithKey(node1);
+    for (int i = 0; i < preds.length; i++) {
+      IGraphNode node = lstNodes.get(i);
+      roots[i] = setRoots.contains(node);
 
-        if (nodeOld == node1) { // no idom - root or merging point
-          return null;
+      List<? extends IGraphNode> lstPreds = node.getPredecessors();
+      int[] nodePreds = new int[lstPreds.size()];
+      int count = 0;
+      for (IGraphNode pred : lstPreds) {
+        Integer position = mapPositions.get(pred);
+        if (position != null) {
+          nodePreds[count++] = position;
         }
-
-        index1 = orderedIDoms.getIndexByKey(node1);
-      }
-      else {
-        nodeOld = node2;
-        node2 = orderedIDoms.getWithKey(node2);
-
-        if (nodeOld == node2) { // no idom - root or merging point
-          return null;
-        }
-
-        index2 = orderedIDoms.getIndexByKey(node2);
       }
+      preds[i] = count == nodePreds.length ? nodePreds : Arrays.copyOf(nodePreds, count);
     }
 
-    return node1;
-  }
-
-  private void calcIDoms() {
-
-    orderNodes();
-
-    List<IGraphNode> lstNodes = colOrderedIDoms.getLstKeys();
-
-    while (true) {
-
-      boolean changed = false;
-
-      for (IGraphNode node : lstNodes) {
-
-        IGraphNode idom = null;
-
-        if (!setRoots.contains(node)) {
-          for (IGraphNode pred : node.getPredecessors()) {
-            if (colOrderedIDoms.getWithKey(pred) != null) {
-              idom = getCommonIDom(idom, pred, colOrderedIDoms);
-              if (idom == null) {
-                break; // no idom found: merging point of two trees
-              }
-            }
-          }
-        }
-
-        if (idom == null) {
-          idom = node;
-        }
-
-        IGraphNode oldidom = colOrderedIDoms.putWithKey(idom, node);
-        if (!idom.equals(oldidom)) { // oldidom is null iff the node is touched for the first time
-          changed = true;
-        }
-      }
-
-      if (!changed) {
-        break;
-      }
-    }
+    tree = FastDominatorTree.ofOrderedPredecessors(preds, roots);
   }
 
   public boolean isDominator(IGraphNode node, IGraphNode dom) {
 
-    while (!node.equals(dom)) {
-
-      IGraphNode idom = colOrderedIDoms.getWithKey(node);
+    if (node.equals(dom)) {
+      return true;
+    }
 
-      if (idom == node) {
-        return false; // root node or merging point
-      }
-      else if (idom == null) {
-        throw new RuntimeException("Inconsistent idom sequence discovered!");
-      }
-      else {
-        node = idom;
-      }
+    Integer position = mapPositions.get(node);
+    if (position == null) {
+      throw new RuntimeException("Inconsistent idom sequence discovered!");
     }
 
-    return true;
+    Integer domPosition = mapPositions.get(dom);
+    return domPosition != null && tree.isDominator(position, domPosition);
   }
 }
@@ -1,6 +1,7 @@
 // Copyright 2000-2017 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
 package org.jetbrains.java.decompiler.modules.decompiler.deobfuscator;
 
+import org.jetbrains.java.decompiler.main.rels.MethodTimeout;
 import org.jetbrains.java.decompiler.modules.decompiler.StatEdge;
 import org.jetbrains.java.decompiler.modules.decompiler.stats.BasicBlockStatement;
 import org.jetbrains.java.decompiler.modules.decompiler.stats.Statement;
@@ -50,6 +51,8 @@ public class IrreducibleCFGDeobfuscator {
 
     // transforming and reducing the graph
     while (true) {
+      MethodTimeout.checkTimeout();
+
       int ttype = 0;
       Node node = null;
 
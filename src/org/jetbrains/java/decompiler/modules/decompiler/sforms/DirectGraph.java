@@ -35,6 +35,7 @@ public class DirectGraph {
 
     nodes.clear();
     for (DirectNode node : res) {
+      node.index = nodes.size();
       nodes.addWithKey(node, node.id);
     }
   }
@@ -22,6 +22,9 @@ public class DirectNode {
 
   public final String id;
 
+  // position in the reverse post-order of the graph, dense id for per-node data; -1 if not reachable
+  public int index = -1;
+
   public BasicBlockStatement block;
 
   public final Statement statement;
@@ -462,7 +462,7 @@ public class FlattenStatementsHelper {
           DirectNode dest = graph.nodes.getWithKey(mapDestinationNodes.get(Integer.parseInt(arr[1]))[isContinueEdge ? 1 : 0]);
           DirectNode enter = graph.nodes.getWithKey(mapDestinationNodes.get(Integer.parseInt(arr[2]))[0]);
 
-          newLst.add(new FinallyPathWrapper(arr[0], dest.id, enter.id));
+          newLst.add(new FinallyPathWrapper(graph.nodes.getWithKey(arr[0]), dest.id, enter));
 
           if (i == 0 && arr[3] != null) {
             graph.mapFinallyMonitorExceptionPathExits.put(ent.getKey(), dest.id);
@@ -486,11 +486,15 @@ public class FlattenStatementsHelper {
     public final String source;
     public final String destination;
     public final String entry;
+    public final DirectNode sourceNode;
+    public final DirectNode entryNode;
 
-    private FinallyPathWrapper(String source, String destination, String entry) {
-      this.source = source;
+    private FinallyPathWrapper(DirectNode sourceNode, String destination, DirectNode entryNode) {
+      this.source = sourceNode.id;
       this.destination = destination;
-      this.entry = entry;
+      this.entry = entryNode.id;
+      this.sourceNode = sourceNode;
+      this.entryNode = entryNode;
     }
 
     @Override
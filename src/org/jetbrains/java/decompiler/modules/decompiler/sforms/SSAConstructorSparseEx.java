@@ -2,6 +2,9 @@
 package org.jetbrains.java.decompiler.modules.decompiler.sforms;
 
 import org.jetbrains.java.decompiler.code.CodeConstants;
+import org.jetbrains.java.decompiler.main.DecompilerContext;
+import org.jetbrains.java.decompiler.main.extern.IFernflowerLogger;
+import org.jetbrains.java.decompiler.main.rels.MethodTimeout;
 import org.jetbrains.java.decompiler.modules.decompiler.exps.AssignmentExprent;
 import org.jetbrains.java.decompiler.modules.decompiler.exps.Exprent;
 import org.jetbrains.java.decompiler.modules.decompiler.exps.FunctionExprent;
@@ -15,73 +18,86 @@ import org.jetbrains.java.decompiler.modules.decompiler.vars.VarVersionPair;
 import org.jetbrains.java.decompiler.struct.StructMethod;
 import org.jetbrains.java.decompiler.struct.gen.MethodDescriptor;
 import org.jetbrains.java.decompiler.util.DotExporter;
-import org.jetbrains.java.decompiler.util.FastSparseSetFactory;
-import org.jetbrains.java.decompiler.util.FastSparseSetFactory.FastSparseSet;
+import org.jetbrains.java.decompiler.util.FastIntSet;
 import org.jetbrains.java.decompiler.util.InterpreterUtil;
 import org.jetbrains.java.decompiler.util.SFormsFastMapDirect;
 
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.ArrayList;
-import java.util.Map.Entry;
 
 public class SSAConstructorSparseEx {
 
-  // node id, var, version
-  private final HashMap<String, SFormsFastMapDirect> inVarVersions = new HashMap<>();
+  // node index, var, version
+  private SFormsFastMapDirect[] inVarVersions;
 
-  // node id, var, version (direct branch)
-  private final HashMap<String, SFormsFastMapDirect> outVarVersions = new HashMap<>();
+  // node index, var, version (direct branch)
+  private SFormsFastMapDirect[] outVarVersions;
 
-  // node id, var, version (negative branch)
-  private final HashMap<String, SFormsFastMapDirect> outNegVarVersions = new HashMap<>();
+  // node index, var, version (negative branch)
+  private SFormsFastMapDirect[] outNegVarVersions;
 
-  // node id, var, version
-  private final HashMap<String, SFormsFastMapDirect> extraVarVersions = new HashMap<>();
+  // node index, var, version
+  private SFormsFastMapDirect[] extraVarVersions;
 
   // (var, version), version
-  private final HashMap<VarVersionPair, FastSparseSet<Integer>> phi = new HashMap<>();
+  private final HashMap<VarVersionPair, FastIntSet> phi = new HashMap<>();
 
   // var, version
   private final HashMap<Integer, Integer> lastversion = new HashMap<>();
 
-  // set factory
-  private FastSparseSetFactory<Integer> factory;
+  // visits of graph nodes until the versions are stable, reported with the trace log
+  private int nodeVisits;
+
 
   public void splitVariables(RootStatement root, StructMethod mt) {
 
     FlattenStatementsHelper flatthelper = new FlattenStatementsHelper();
     DirectGraph dgraph = flatthelper.buildDirectGraph(root);
 
-    DotExporter.toDotFile(dgraph, mt, "ssaSplitVariables");
+    int size = dgraph.nodes.size();
+    inVarVersions = new SFormsFastMapDirect[size];
+    outVarVersions = new SFormsFastMapDirect[size];
+    outNegVarVersions = new SFormsFastMapDirect[size];
+    extraVarVersions = new SFormsFastMapDirect[size];
 
-    List<Integer> setInit = new ArrayList<>();
-    for (int i = 0; i < 64; i++) {
-      setInit.add(i);
-    }
-    factory = new FastSparseSetFactory<>(setInit);
+    DotExporter.toDotFile(dgraph, mt, "ssaSplitVariables");
 
     SFormsFastMapDirect firstmap = createFirstMap(mt);
-    extraVarVersions.put(dgraph.first.id, firstmap);
+    extraVarVersions[dgraph.first.index] = firstmap;
 
     setCatchMaps(root, dgraph, flatthelper);
 
+    // only the nodes with a changed predecessor are visited again
+    BitSet alwaysVisited = getFinallyExitSuccessors(dgraph);
+    BitSet updated = new BitSet();
+    updated.set(0, size);
+
     int itteration = 1;
-    HashSet<String> updated = new HashSet<>();
     do {
+      MethodTimeout.checkTimeout();
       // System.out.println("~~~~~~~~~~~~~ \r\n"+root.toJava());
-      ssaStatements(dgraph, updated, mt, itteration++);
+      ssaStatements(dgraph, updated, alwaysVisited, mt, itteration++);
       // System.out.println("~~~~~~~~~~~~~ \r\n"+root.toJava());
     }
     while (!updated.isEmpty());
+
+    IFernflowerLogger logger = DecompilerContext.getLogger();
+    if (logger.accepts(IFernflowerLogger.Severity.TRACE)) {
+      logger.writeMessage("SSA form of " + mt.getName() + mt.getDescriptor() + ": " + nodeVisits + " node visits in " + (itteration - 1) +
+                          " passes over " + size + " nodes", IFernflowerLogger.Severity.TRACE);
+    }
   }
 
-  private void ssaStatements(DirectGraph dgraph, HashSet<String> updated, StructMethod mt, int itteration) {
+  private void ssaStatements(DirectGraph dgraph, BitSet updated, BitSet alwaysVisited, StructMethod mt, int itteration) {
 
     DotExporter.toDotFile(dgraph, mt, "ssaStatements_" + itteration, outVarVersions);
 
-    for (DirectNode node : dgraph.nodes) {
+    // nodes are visited in reverse post-order, a node marked during the pass is visited in the same pass if it comes later
+    for (int index = getNextNode(updated, alwaysVisited, 0); index >= 0; index = getNextNode(updated, alwaysVisited, index + 1)) {
+      DirectNode node = dgraph.nodes.get(index);
+      nodeVisits++;
 
       //			if (node.id.endsWith("_inc")) {
       //				System.out.println();
@@ -93,10 +109,10 @@ public class SSAConstructorSparseEx {
       //				}
       //			}
 
-      updated.remove(node.id);
+      updated.clear(node.index);
       mergeInVarMaps(node, dgraph);
 
-      SFormsFastMapDirect varmap = inVarVersions.get(node.id);
+      SFormsFastMapDirect varmap = inVarVersions[node.index];
       varmap = new SFormsFastMapDirect(varmap);
 
       SFormsFastMapDirect[] varmaparr = new SFormsFastMapDirect[]{varmap, null};
@@ -111,17 +127,17 @@ public class SSAConstructorSparseEx {
         varmaparr[1] = varmaparr[0];
       }
 
-      boolean this_updated = !mapsEqual(varmaparr[0], outVarVersions.get(node.id))
-                             || (outNegVarVersions.containsKey(node.id) && !mapsEqual(varmaparr[1], outNegVarVersions.get(node.id)));
+      boolean this_updated = !InterpreterUtil.equalObjects(varmaparr[0], outVarVersions[node.index])
+                             || (outNegVarVersions[node.index] != null && !InterpreterUtil.equalObjects(varmaparr[1], outNegVarVersions[node.index]));
 
       if (this_updated) {
-        outVarVersions.put(node.id, varmaparr[0]);
+        outVarVersions[node.index] = varmaparr[0];
         if (dgraph.mapNegIfBranch.containsKey(node.id)) {
-          outNegVarVersions.put(node.id, varmaparr[1]);
+          outNegVarVersions[node.index] = varmaparr[1];
         }
 
         for (DirectNode nd : node.succs) {
-          updated.add(nd.id);
+          updated.set(nd.index);
         }
       }
     }
@@ -236,7 +252,7 @@ public class SSAConstructorSparseEx {
 
       VarExprent vardest = (VarExprent)expr;
       Integer varindex = vardest.getIndex();
-      FastSparseSet<Integer> vers = varmap.get(varindex);
+      FastIntSet vers = varmap.get(varindex);
 
       int cardinality = vers != null ? vers.getCardinality() : 0;
       if (cardinality == 1) { // == 1
@@ -294,7 +310,7 @@ public class SSAConstructorSparseEx {
     SFormsFastMapDirect mapNew = new SFormsFastMapDirect();
 
     for (DirectNode pred : node.preds) {
-      SFormsFastMapDirect mapOut = getFilteredOutMap(node.id, pred.id, dgraph, node.id);
+      SFormsFastMapDirect mapOut = getFilteredOutMap(node, pred, dgraph, node.id);
       if (mapNew.isEmpty()) {
         mapNew = mapOut.getCopy();
       }
@@ -303,8 +319,8 @@ public class SSAConstructorSparseEx {
       }
     }
 
-    if (extraVarVersions.containsKey(node.id)) {
-      SFormsFastMapDirect mapExtra = extraVarVersions.get(node.id);
+    SFormsFastMapDirect mapExtra = extraVarVersions[node.index];
+    if (mapExtra != null) {
       if (mapNew.isEmpty()) {
         mapNew = mapExtra.getCopy();
       }
@@ -313,20 +329,22 @@ public class SSAConstructorSparseEx {
       }
     }
 
-    inVarVersions.put(node.id, mapNew);
+    inVarVersions[node.index] = mapNew;
   }
 
-  private SFormsFastMapDirect getFilteredOutMap(String nodeid, String predid, DirectGraph dgraph, String destid) {
+  private SFormsFastMapDirect getFilteredOutMap(DirectNode node, DirectNode pred, DirectGraph dgraph, String destid) {
+    String nodeid = node.id;
+    String predid = pred.id;
 
     SFormsFastMapDirect mapNew = new SFormsFastMapDirect();
 
     if (nodeid.equals(dgraph.mapNegIfBranch.get(predid))) {
-      if (outNegVarVersions.containsKey(predid)) {
-        mapNew = outNegVarVersions.get(predid).getCopy();
+      if (getNodeMap(outNegVarVersions, pred) != null) {
+        mapNew = getNodeMap(outNegVarVersions, pred).getCopy();
       }
     }
-    else if (outVarVersions.containsKey(predid)) {
-      mapNew = outVarVersions.get(predid).getCopy();
+    else if (getNodeMap(outVarVersions, pred) != null) {
+      mapNew = getNodeMap(outVarVersions, pred).getCopy();
     }
 
     boolean isFinallyExit = dgraph.mapShortRangeFinallyPaths.containsKey(predid);
@@ -352,14 +370,14 @@ public class SSAConstructorSparseEx {
 
         if (recFinally) {
           // recursion
-          map = getFilteredOutMap(finwrap.entry, finwrap.source, dgraph, destid);
+          map = getFilteredOutMap(finwrap.entryNode, finwrap.sourceNode, dgraph, destid);
         }
         else {
           if (finwrap.entry.equals(dgraph.mapNegIfBranch.get(finwrap.source))) {
-            map = outNegVarVersions.get(finwrap.source);
+            map = getNodeMap(outNegVarVersions, finwrap.sourceNode);
           }
           else {
-            map = outVarVersions.get(finwrap.source);
+            map = getNodeMap(outVarVersions, finwrap.sourceNode);
           }
         }
 
@@ -396,7 +414,7 @@ public class SSAConstructorSparseEx {
 
         mapNewTemp.union(mapTrueSource);
 
-        SFormsFastMapDirect oldInMap = inVarVersions.get(nodeid);
+        SFormsFastMapDirect oldInMap = getNodeMap(inVarVersions, node);
         if (oldInMap != null) {
           mapNewTemp.union(oldInMap);
         }
@@ -408,39 +426,43 @@ public class SSAConstructorSparseEx {
     return mapNew;
   }
 
-  private static SFormsFastMapDirect mergeMaps(SFormsFastMapDirect mapTo, SFormsFastMapDirect map2) {
-
-    if (map2 != null && !map2.isEmpty()) {
-      mapTo.union(map2);
+  // a node after a short range finally exit also takes its input from the paths through the finally and from its own last input,
+  // so it has to be visited on every pass and not only when one of its predecessors changed
+  private static BitSet getFinallyExitSuccessors(DirectGraph dgraph) {
+    BitSet nodes = new BitSet();
+    for (DirectNode node : dgraph.nodes) {
+      for (DirectNode pred : node.preds) {
+        if (dgraph.mapShortRangeFinallyPaths.containsKey(pred.id)) {
+          nodes.set(node.index);
+          break;
+        }
+      }
     }
-
-    return mapTo;
+    return nodes;
   }
 
-  private static boolean mapsEqual(SFormsFastMapDirect map1, SFormsFastMapDirect map2) {
+  private static int getNextNode(BitSet updated, BitSet alwaysVisited, int from) {
+    int next = updated.nextSetBit(from);
+    int always = alwaysVisited.nextSetBit(from);
+    return next < 0 || (always >= 0 && always < next) ? always : next;
+  }
 
-    if (map1 == null) {
-      return map2 == null;
-    }
-    else if (map2 == null) {
-      return false;
-    }
+  // nodes which are not reachable have no maps
+  private static SFormsFastMapDirect getNodeMap(SFormsFastMapDirect[] maps, DirectNode node) {
+    return node.index < 0 ? null : maps[node.index];
+  }
 
-    if (map1.size() != map2.size()) {
-      return false;
-    }
+  private static SFormsFastMapDirect mergeMaps(SFormsFastMapDirect mapTo, SFormsFastMapDirect map2) {
 
-    for (Entry<Integer, FastSparseSet<Integer>> ent2 : map2.entryList()) {
-      if (!InterpreterUtil.equalObjects(map1.get(ent2.getKey()), ent2.getValue())) {
-        return false;
-      }
+    if (map2 != null && !map2.isEmpty()) {
+      mapTo.union(map2);
     }
 
-    return true;
+    return mapTo;
   }
 
   private void setCurrentVar(SFormsFastMapDirect varmap, Integer var, Integer vers) {
-    FastSparseSet<Integer> set = factory.spawnEmptySet();
+    FastIntSet set = new FastIntSet();
     set.add(vers);
     varmap.put(var, set);
   }
@@ -468,7 +490,7 @@ public class SSAConstructorSparseEx {
           map = new SFormsFastMapDirect();
           setCurrentVar(map, varindex, version);
 
-          extraVarVersions.put(dgraph.nodes.getWithKey(flatthelper.getMapDestinationNodes().get(stat.getStats().get(i).id)[0]).id, map);
+          extraVarVersions[dgraph.nodes.getWithKey(flatthelper.getMapDestinationNodes().get(stat.getStats().get(i).id)[0]).index] = map;
         }
     }
 
@@ -489,7 +511,7 @@ public class SSAConstructorSparseEx {
     for (int i = 0; i < paramcount; i++) {
       int version = getNextFreeVersion(varindex); // == 1
 
-      FastSparseSet<Integer> set = factory.spawnEmptySet();
+      FastIntSet set = new FastIntSet();
       set.add(version);
       map.put(varindex, set);
 
@@ -509,7 +531,7 @@ public class SSAConstructorSparseEx {
     return map;
   }
 
-  public HashMap<VarVersionPair, FastSparseSet<Integer>> getPhi() {
+  public HashMap<VarVersionPair, FastIntSet> getPhi() {
     return phi;
   }
 }
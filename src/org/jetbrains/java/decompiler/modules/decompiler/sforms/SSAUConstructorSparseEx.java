@@ -2,6 +2,9 @@
 package org.jetbrains.java.decompiler.modules.decompiler.sforms;
 
 import org.jetbrains.java.decompiler.code.CodeConstants;
+import org.jetbrains.java.decompiler.main.DecompilerContext;
+import org.jetbrains.java.decompiler.main.extern.IFernflowerLogger;
+import org.jetbrains.java.decompiler.main.rels.MethodTimeout;
 import org.jetbrains.java.decompiler.modules.decompiler.exps.*;
 import org.jetbrains.java.decompiler.modules.decompiler.sforms.FlattenStatementsHelper.FinallyPathWrapper;
 import org.jetbrains.java.decompiler.modules.decompiler.stats.*;
@@ -12,13 +15,13 @@ import org.jetbrains.java.decompiler.modules.decompiler.vars.VarVersionsGraph;
 import org.jetbrains.java.decompiler.struct.StructMethod;
 import org.jetbrains.java.decompiler.struct.gen.MethodDescriptor;
 import org.jetbrains.java.decompiler.util.DotExporter;
-import org.jetbrains.java.decompiler.util.FastSparseSetFactory;
-import org.jetbrains.java.decompiler.util.FastSparseSetFactory.FastSparseSet;
+import org.jetbrains.java.decompiler.util.FastIntSet;
 import org.jetbrains.java.decompiler.util.InterpreterUtil;
 import org.jetbrains.java.decompiler.util.SFormsFastMapDirect;
 import org.jetbrains.java.decompiler.util.VBStyleCollection;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -26,25 +29,28 @@ import java.util.Map.Entry;
 
 public class SSAUConstructorSparseEx {
 
-  // node id, var, version
-  private final HashMap<String, SFormsFastMapDirect> inVarVersions = new HashMap<>();
+  // node index, var, version
+  private SFormsFastMapDirect[] inVarVersions;
   //private HashMap<String, HashMap<Integer, FastSet<Integer>>> inVarVersions = new HashMap<String, HashMap<Integer, FastSet<Integer>>>();
 
-  // node id, var, version (direct branch)
-  private final HashMap<String, SFormsFastMapDirect> outVarVersions = new HashMap<>();
+  // node index, var, version (direct branch)
+  private SFormsFastMapDirect[] outVarVersions;
   //private HashMap<String, HashMap<Integer, FastSet<Integer>>> outVarVersions = new HashMap<String, HashMap<Integer, FastSet<Integer>>>();
 
-  // node id, var, version (negative branch)
-  private final HashMap<String, SFormsFastMapDirect> outNegVarVersions = new HashMap<>();
+  // node index, var, version (negative branch)
+  private SFormsFastMapDirect[] outNegVarVersions;
   //private HashMap<String, HashMap<Integer, FastSet<Integer>>> outNegVarVersions = new HashMap<String, HashMap<Integer, FastSet<Integer>>>();
 
-  // node id, var, version
-  private final HashMap<String, SFormsFastMapDirect> extraVarVersions = new HashMap<>();
+  // node index, var, version
+  private SFormsFastMapDirect[] extraVarVersions;
   //private HashMap<String, HashMap<Integer, FastSet<Integer>>> extraVarVersions = new HashMap<String, HashMap<Integer, FastSet<Integer>>>();
 
   // var, version
   private final HashMap<Integer, Integer> lastversion = new HashMap<>();
 
+  // visits of graph nodes until the versions are stable, reported with the trace log
+  private int nodeVisits;
+
   // version, protected ranges (catch, finally)
   private final HashMap<VarVersionPair, Integer> mapVersionFirstRange = new HashMap<>();
 
@@ -64,8 +70,6 @@ public class SSAUConstructorSparseEx {
   // field access counter
   private int fieldvarcounter = -1;
 
-  // set factory
-  private FastSparseSetFactory<Integer> factory;
 
   // track assignments for finding effectively final vars (left var, right var)
   private HashMap<VarVersionPair, VarVersionPair> varAssignmentMap = new HashMap<>();
@@ -75,43 +79,58 @@ public class SSAUConstructorSparseEx {
     FlattenStatementsHelper flatthelper = new FlattenStatementsHelper();
     DirectGraph dgraph = flatthelper.buildDirectGraph(root);
 
+    int size = dgraph.nodes.size();
+    inVarVersions = new SFormsFastMapDirect[size];
+    outVarVersions = new SFormsFastMapDirect[size];
+    outNegVarVersions = new SFormsFastMapDirect[size];
+    extraVarVersions = new SFormsFastMapDirect[size];
+
     DotExporter.toDotFile(dgraph, mt, "ssauSplitVariables");
-    
-    List<Integer> setInit = new ArrayList<>();
-    for (int i = 0; i < 64; i++) {
-      setInit.add(i);
-    }
-    factory = new FastSparseSetFactory<>(setInit);
 
-    extraVarVersions.put(dgraph.first.id, createFirstMap(mt, root));
+    extraVarVersions[dgraph.first.index] = createFirstMap(mt, root);
 
     setCatchMaps(root, dgraph, flatthelper);
 
+    // only the nodes with a changed predecessor are visited again
+    BitSet alwaysVisited = getFinallyExitSuccessors(dgraph);
+    BitSet updated = new BitSet();
+    updated.set(0, size);
+
     int itteration = 1;
-    HashSet<String> updated = new HashSet<>();
     do {
+      MethodTimeout.checkTimeout();
       //			System.out.println("~~~~~~~~~~~~~ \r\n"+root.toJava());
-      ssaStatements(dgraph, updated, false, mt, itteration++);
+      ssaStatements(dgraph, updated, alwaysVisited, false, mt, itteration++);
       //			System.out.println("~~~~~~~~~~~~~ \r\n"+root.toJava());
     }
     while (!updated.isEmpty());
 
+    // live variables are collected in one more pass over all nodes
+    updated.set(0, size);
+    ssaStatements(dgraph, updated, alwaysVisited, true, mt, itteration++);
 
-    ssaStatements(dgraph, updated, true, mt, itteration++);
+    IFernflowerLogger logger = DecompilerContext.getLogger();
+    if (logger.accepts(IFernflowerLogger.Severity.TRACE)) {
+      logger.writeMessage("SSAU form of " + mt.getName() + mt.getDescriptor() + ": " + nodeVisits + " node visits in " + (itteration - 1) +
+                          " passes over " + size + " nodes", IFernflowerLogger.Severity.TRACE);
+    }
 
     ssuversions.initDominators();
   }
 
-  private void ssaStatements(DirectGraph dgraph, HashSet<String> updated, boolean calcLiveVars, StructMethod mt, int itteration) {
+  private void ssaStatements(DirectGraph dgraph, BitSet updated, BitSet alwaysVisited, boolean calcLiveVars, StructMethod mt, int itteration) {
 
     DotExporter.toDotFile(dgraph, mt, "ssauStatements_" + itteration);
 
-    for (DirectNode node : dgraph.nodes) {
+    // nodes are visited in reverse post-order, a node marked during the pass is visited in the same pass if it comes later
+    for (int index = getNextNode(updated, alwaysVisited, 0); index >= 0; index = getNextNode(updated, alwaysVisited, index + 1)) {
+      DirectNode node = dgraph.nodes.get(index);
+      nodeVisits++;
 
-      updated.remove(node.id);
+      updated.clear(node.index);
       mergeInVarMaps(node, dgraph);
 
-      SFormsFastMapDirect varmap = new SFormsFastMapDirect(inVarVersions.get(node.id));
+      SFormsFastMapDirect varmap = new SFormsFastMapDirect(inVarVersions[node.index]);
 
       SFormsFastMapDirect[] varmaparr = new SFormsFastMapDirect[]{varmap, null};
 
@@ -134,18 +153,18 @@ public class SSAUConstructorSparseEx {
         varmaparr[1].removeAllFields();
       }
 
-      boolean this_updated = !mapsEqual(varmaparr[0], outVarVersions.get(node.id))
-                             || (outNegVarVersions.containsKey(node.id) && !mapsEqual(varmaparr[1], outNegVarVersions.get(node.id)));
+      boolean this_updated = !InterpreterUtil.equalObjects(varmaparr[0], outVarVersions[node.index])
+                             || (outNegVarVersions[node.index] != null && !InterpreterUtil.equalObjects(varmaparr[1], outNegVarVersions[node.index]));
 
       if (this_updated) {
 
-        outVarVersions.put(node.id, varmaparr[0]);
+        outVarVersions[node.index] = varmaparr[0];
         if (dgraph.mapNegIfBranch.containsKey(node.id)) {
-          outNegVarVersions.put(node.id, varmaparr[1]);
+          outNegVarVersions[node.index] = varmaparr[1];
         }
 
         for (DirectNode nd : node.succs) {
-          updated.add(nd.id);
+          updated.set(nd.index);
         }
       }
     }
@@ -341,7 +360,7 @@ public class SSAUConstructorSparseEx {
 
               VarVersionNode vernode = ssuversions.nodes.getWithKey(varpaar);
 
-              FastSparseSet<Integer> vers = factory.spawnEmptySet();
+              FastIntSet vers = new FastIntSet();
               if (vernode.preds.size() == 1) {
                 vers.add(vernode.preds.iterator().next().source.version);
               }
@@ -368,7 +387,7 @@ public class SSAUConstructorSparseEx {
       Integer varindex = vardest.getIndex();
       Integer current_vers = vardest.getVersion();
 
-      FastSparseSet<Integer> vers = varmap.get(varindex);
+      FastIntSet vers = varmap.get(varindex);
 
       int cardinality = vers != null ? vers.getCardinality() : 0;
       if (cardinality == 1) { // size == 1
@@ -436,9 +455,9 @@ public class SSAUConstructorSparseEx {
     }
   }
 
-  private void createOrUpdatePhiNode(VarVersionPair phivar, FastSparseSet<Integer> vers, Statement stat) {
+  private void createOrUpdatePhiNode(VarVersionPair phivar, FastIntSet vers, Statement stat) {
 
-    FastSparseSet<Integer> versCopy = vers.getCopy();
+    FastIntSet versCopy = vers.getCopy();
     HashSet<Integer> phiVers = new HashSet<>();
 
     // take into account the corresponding mm/pp node if existing
@@ -535,7 +554,7 @@ public class SSAUConstructorSparseEx {
     SFormsFastMapDirect mapNew = new SFormsFastMapDirect();
 
     for (DirectNode pred : node.preds) {
-      SFormsFastMapDirect mapOut = getFilteredOutMap(node.id, pred.id, dgraph, node.id);
+      SFormsFastMapDirect mapOut = getFilteredOutMap(node, pred, dgraph, node.id);
       if (mapNew.isEmpty()) {
         mapNew = mapOut.getCopy();
       }
@@ -544,8 +563,8 @@ public class SSAUConstructorSparseEx {
       }
     }
 
-    if (extraVarVersions.containsKey(node.id)) {
-      SFormsFastMapDirect mapExtra = extraVarVersions.get(node.id);
+    SFormsFastMapDirect mapExtra = extraVarVersions[node.index];
+    if (mapExtra != null) {
       if (mapNew.isEmpty()) {
         mapNew = mapExtra.getCopy();
       }
@@ -554,22 +573,24 @@ public class SSAUConstructorSparseEx {
       }
     }
 
-    inVarVersions.put(node.id, mapNew);
+    inVarVersions[node.index] = mapNew;
   }
 
-  private SFormsFastMapDirect getFilteredOutMap(String nodeid, String predid, DirectGraph dgraph, String destid) {
+  private SFormsFastMapDirect getFilteredOutMap(DirectNode node, DirectNode pred, DirectGraph dgraph, String destid) {
+    String nodeid = node.id;
+    String predid = pred.id;
 
     SFormsFastMapDirect mapNew = new SFormsFastMapDirect();
 
     boolean isFinallyExit = dgraph.mapShortRangeFinallyPaths.containsKey(predid);
 
     if (nodeid.equals(dgraph.mapNegIfBranch.get(predid))) {
-      if (outNegVarVersions.containsKey(predid)) {
-        mapNew = outNegVarVersions.get(predid).getCopy();
+      if (getNodeMap(outNegVarVersions, pred) != null) {
+        mapNew = getNodeMap(outNegVarVersions, pred).getCopy();
       }
     }
-    else if (outVarVersions.containsKey(predid)) {
-      mapNew = outVarVersions.get(predid).getCopy();
+    else if (getNodeMap(outVarVersions, pred) != null) {
+      mapNew = getNodeMap(outVarVersions, pred).getCopy();
     }
 
     if (isFinallyExit) {
@@ -595,14 +616,14 @@ public class SSAUConstructorSparseEx {
 
         if (recFinally) {
           // recursion
-          map = getFilteredOutMap(finwrap.entry, finwrap.source, dgraph, destid);
+          map = getFilteredOutMap(finwrap.entryNode, finwrap.sourceNode, dgraph, destid);
         }
         else {
           if (finwrap.entry.equals(dgraph.mapNegIfBranch.get(finwrap.source))) {
-            map = outNegVarVersions.get(finwrap.source);
+            map = getNodeMap(outNegVarVersions, finwrap.sourceNode);
           }
           else {
-            map = outVarVersions.get(finwrap.source);
+            map = getNodeMap(outVarVersions, finwrap.sourceNode);
           }
         }
 
@@ -651,12 +672,12 @@ public class SSAUConstructorSparseEx {
           SFormsFastMapDirect mapExitVar = mapNew.getCopy();
           mapExitVar.complement(mapTrueSource);
 
-          for (Entry<Integer, FastSparseSet<Integer>> ent : mapExitVar.entryList()) {
+          for (Entry<Integer, FastIntSet> ent : mapExitVar.entryList()) {
             for (Integer version : ent.getValue()) {
 
               Integer varindex = ent.getKey();
               VarVersionPair exitvar = new VarVersionPair(varindex, version);
-              FastSparseSet<Integer> newSet = mapNew.get(varindex);
+              FastIntSet newSet = mapNew.get(varindex);
 
               // remove the actual exit version
               newSet.remove(version);
@@ -693,40 +714,44 @@ public class SSAUConstructorSparseEx {
     return mapNew;
   }
 
-  private static SFormsFastMapDirect mergeMaps(SFormsFastMapDirect mapTo, SFormsFastMapDirect map2) {
-
-    if (map2 != null && !map2.isEmpty()) {
-      mapTo.union(map2);
+  // a node after a short range finally exit also takes its input from the paths through the finally and from its own last input,
+  // so it has to be visited on every pass and not only when one of its predecessors changed
+  private static BitSet getFinallyExitSuccessors(DirectGraph dgraph) {
+    BitSet nodes = new BitSet();
+    for (DirectNode node : dgraph.nodes) {
+      for (DirectNode pred : node.preds) {
+        if (dgraph.mapShortRangeFinallyPaths.containsKey(pred.id)) {
+          nodes.set(node.index);
+          break;
+        }
+      }
     }
-
-    return mapTo;
+    return nodes;
   }
 
-  private static boolean mapsEqual(SFormsFastMapDirect map1, SFormsFastMapDirect map2) {
+  private static int getNextNode(BitSet updated, BitSet alwaysVisited, int from) {
+    int next = updated.nextSetBit(from);
+    int always = alwaysVisited.nextSetBit(from);
+    return next < 0 || (always >= 0 && always < next) ? always : next;
+  }
 
-    if (map1 == null) {
-      return map2 == null;
-    }
-    else if (map2 == null) {
-      return false;
-    }
+  // nodes which are not reachable have no maps
+  private static SFormsFastMapDirect getNodeMap(SFormsFastMapDirect[] maps, DirectNode node) {
+    return node.index < 0 ? null : maps[node.index];
+  }
 
-    if (map1.size() != map2.size()) {
-      return false;
-    }
+  private static SFormsFastMapDirect mergeMaps(SFormsFastMapDirect mapTo, SFormsFastMapDirect map2) {
 
-    for (Entry<Integer, FastSparseSet<Integer>> ent2 : map2.entryList()) {
-      if (!InterpreterUtil.equalObjects(map1.get(ent2.getKey()), ent2.getValue())) {
-        return false;
-      }
+    if (map2 != null && !map2.isEmpty()) {
+      mapTo.union(map2);
     }
 
-    return true;
+    return mapTo;
   }
 
 
   private void setCurrentVar(SFormsFastMapDirect varmap, Integer var, Integer vers) {
-    FastSparseSet<Integer> set = factory.spawnEmptySet();
+    FastIntSet set = new FastIntSet();
     set.add(vers);
     varmap.put(var, set);
   }
@@ -754,7 +779,7 @@ public class SSAUConstructorSparseEx {
           map = new SFormsFastMapDirect();
           setCurrentVar(map, varindex, version);
 
-          extraVarVersions.put(dgraph.nodes.getWithKey(flatthelper.getMapDestinationNodes().get(stat.getStats().get(i).id)[0]).id, map);
+          extraVarVersions[dgraph.nodes.getWithKey(flatthelper.getMapDestinationNodes().get(stat.getStats().get(i).id)[0]).index] = map;
           //ssuversions.createOrGetNode(new VarVersionPair(varindex, version));
           ssuversions.createNode(new VarVersionPair(varindex, version));
         }
@@ -777,7 +802,7 @@ public class SSAUConstructorSparseEx {
     for (int i = 0; i < paramcount; i++) {
       int version = getNextFreeVersion(varindex, root); // == 1
 
-      FastSparseSet<Integer> set = factory.spawnEmptySet();
+      FastIntSet set = new FastIntSet();
       set.add(version);
       map.put(varindex, set);
       ssuversions.createNode(new VarVersionPair(varindex, version));
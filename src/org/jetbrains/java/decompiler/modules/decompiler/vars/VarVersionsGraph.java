@@ -1,9 +1,7 @@
 // Copyright 2000-2018 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
 package org.jetbrains.java.decompiler.modules.decompiler.vars;
 
-import org.jetbrains.java.decompiler.modules.decompiler.decompose.GenericDominatorEngine;
-import org.jetbrains.java.decompiler.modules.decompiler.decompose.IGraph;
-import org.jetbrains.java.decompiler.modules.decompiler.decompose.IGraphNode;
+import org.jetbrains.java.decompiler.modules.decompiler.decompose.FastDominatorTree;
 import org.jetbrains.java.decompiler.struct.attr.StructLocalVariableTableAttribute.LocalVariable;
 import org.jetbrains.java.decompiler.util.VBStyleCollection;
 
@@ -12,7 +10,10 @@ import java.util.*;
 public class VarVersionsGraph {
   public final VBStyleCollection<VarVersionNode, VarVersionPair> nodes = new VBStyleCollection<>();
 
-  private GenericDominatorEngine engine;
+  // node, id in the dominator tree
+  private Map<VarVersionNode, Integer> dominatorIds;
+
+  private FastDominatorTree dominators;
 
   public VarVersionNode createNode(VarVersionPair ver) {
     return createNode(ver, null);
@@ -30,7 +31,7 @@ public class VarVersionsGraph {
 
   public boolean isDominatorSet(VarVersionNode node, Set<VarVersionNode> domnodes) {
     if (domnodes.size() == 1) {
-      return engine.isDominator(node, domnodes.iterator().next());
+      return isDominator(node, domnodes.iterator().next());
     }
     else {
       Set<VarVersionNode> marked = new HashSet<>();
@@ -68,72 +69,50 @@ public class VarVersionsGraph {
   }
 
   public void initDominators() {
-    Set<VarVersionNode> roots = new HashSet<>();
-
-    for (VarVersionNode node : nodes) {
-      if (node.preds.isEmpty()) {
-        roots.add(node);
-      }
+    List<VarVersionNode> lstNodes = new ArrayList<>(nodes);
+    dominatorIds = new HashMap<>(lstNodes.size());
+    for (VarVersionNode node : lstNodes) {
+      dominatorIds.put(node, dominatorIds.size());
     }
 
-    engine = new GenericDominatorEngine(new IGraph() {
-      @Override
-      public List<? extends IGraphNode> getReversePostOrderList() {
-        return getReversedPostOrder(roots);
+    int[] roots = new int[lstNodes.size()];
+    int rootCount = 0;
+    for (int i = 0; i < roots.length; i++) {
+      if (lstNodes.get(i).preds.isEmpty()) {
+        roots[rootCount++] = i;
       }
+    }
 
-      @Override
-      public Set<? extends IGraphNode> getRoots() {
-        return new HashSet<IGraphNode>(roots);
+    List<int[]> lstSuccs = new ArrayList<>(lstNodes.size());
+    for (int i = 0; i < lstNodes.size(); i++) {
+      VarVersionNode node = lstNodes.get(i);
+      int[] nodeSuccs = new int[node.succs.size()];
+      int count = 0;
+      for (VarVersionEdge edge : node.succs) {
+        Integer id = dominatorIds.get(edge.dest);
+        if (id == null) { // node already removed from the graph
+          dominatorIds.put(edge.dest, id = lstNodes.size());
+          lstNodes.add(edge.dest);
+        }
+        nodeSuccs[count++] = id;
       }
-    });
-
-    engine.initialize();
-  }
-
-  private static List<VarVersionNode> getReversedPostOrder(Collection<VarVersionNode> roots) {
-    List<VarVersionNode> lst = new LinkedList<>();
-    Set<VarVersionNode> setVisited = new HashSet<>();
-
-    for (VarVersionNode root : roots) {
-      List<VarVersionNode> lstTemp = new LinkedList<>();
-      addToReversePostOrderListIterative(root, lstTemp, setVisited);
-      lst.addAll(lstTemp);
+      lstSuccs.add(nodeSuccs);
     }
 
-    return lst;
+    dominators = FastDominatorTree.ofSuccessors(lstSuccs.toArray(new int[0][]), Arrays.copyOf(roots, rootCount));
   }
 
-  private static void addToReversePostOrderListIterative(VarVersionNode root, List<? super VarVersionNode> lst, Set<? super VarVersionNode> setVisited) {
-    Map<VarVersionNode, List<VarVersionEdge>> mapNodeSuccs = new HashMap<>();
-    LinkedList<VarVersionNode> stackNode = new LinkedList<>();
-    LinkedList<Integer> stackIndex = new LinkedList<>();
-
-    stackNode.add(root);
-    stackIndex.add(0);
-
-    while (!stackNode.isEmpty()) {
-      VarVersionNode node = stackNode.getLast();
-      int index = stackIndex.removeLast();
-
-      setVisited.add(node);
-
-      List<VarVersionEdge> lstSuccs = mapNodeSuccs.computeIfAbsent(node, n -> new ArrayList<>(n.succs));
-      for (; index < lstSuccs.size(); index++) {
-        VarVersionNode succ = lstSuccs.get(index).dest;
-
-        if (!setVisited.contains(succ)) {
-          stackIndex.add(index + 1);
-          stackNode.add(succ);
-          stackIndex.add(0);
-          break;
-        }
-      }
+  private boolean isDominator(VarVersionNode node, VarVersionNode dom) {
+    if (node == dom) {
+      return true;
+    }
 
-      if (index == lstSuccs.size()) {
-        lst.add(0, node);
-        stackNode.removeLast();
-      }
+    Integer id = dominatorIds.get(node);
+    if (id == null || !dominators.isReachable(id)) {
+      throw new RuntimeException("Inconsistent idom sequence discovered!");
     }
+
+    Integer domId = dominatorIds.get(dom);
+    return domId != null && dominators.isDominator(id, domId);
   }
-}
\ No newline at end of file
+}
@@ -1,27 +1,32 @@
 // Copyright 2000-2017 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
 package org.jetbrains.java.decompiler.struct;
 
+import org.jetbrains.java.decompiler.main.DecompilationCache;
 import org.jetbrains.java.decompiler.main.DecompilerContext;
+import org.jetbrains.java.decompiler.main.IncrementalHelper;
+import org.jetbrains.java.decompiler.main.extern.IFernflowerLogger.Severity;
 import org.jetbrains.java.decompiler.main.extern.IFernflowerPreferences;
 import org.jetbrains.java.decompiler.main.extern.IResultSaver;
 import org.jetbrains.java.decompiler.struct.lazy.LazyLoader;
 import org.jetbrains.java.decompiler.struct.lazy.LazyLoader.Link;
 import org.jetbrains.java.decompiler.util.DataInputFullStream;
 import org.jetbrains.java.decompiler.util.InterpreterUtil;
+import org.jetbrains.java.decompiler.util.TextBuffer;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 import java.util.zip.ZipFile;
 
 public class ContextUnit {
@@ -45,6 +50,11 @@ public class ContextUnit {
   private List<StructClass> classes = new ArrayList<>();
   private Manifest manifest;
 
+  // incremental mode: root classes whose output is copied from the previous output archive
+  private String previousOutput;
+  private Set<String> previousEntries = Collections.emptySet();
+  private Set<String> unchangedClasses = Collections.emptySet();
+
   public ContextUnit(int type, String archivePath, String filename, boolean own, IResultSaver resultSaver, IDecompiledData decompiledData) {
     this.type = type;
     this.own = own;
@@ -109,6 +119,19 @@ public class ContextUnit {
   }
 
   public void save() {
+    startSave();
+
+    List<ClassTask> tasks = new ArrayList<>();
+    collectClassTasks(tasks);
+    runClassTasks(tasks);
+
+    finishSave();
+  }
+
+  /**
+   * Creates the output folder or archive of this unit and copies all of its non-class entries.
+   */
+  void startSave() {
     switch (type) {
       case TYPE_FOLDER:
         // create folder
@@ -119,25 +142,6 @@ public class ContextUnit {
           resultSaver.copyFile(pair[0], filename, pair[1]);
         }
 
-        // classes
-        for (int i = 0; i < classes.size(); i++) {
-          StructClass cl = classes.get(i);
-          String entryName = decompiledData.getClassEntryName(cl, classEntries.get(i));
-          if (entryName != null) {
-            String content = null;
-            if (decompiledData.processClass(cl)) {
-              content = decompiledData.getClassContent(cl);
-            }
-            if (content != null) {
-              int[] mapping = null;
-              if (DecompilerContext.getOption(IFernflowerPreferences.BYTECODE_SOURCE_MAPPING)) {
-                mapping = DecompilerContext.getBytecodeSourceMapper().getOriginalLinesMapping();
-              }
-              resultSaver.saveClassFile(filename, cl.qualifiedName, entryName, content, mapping);
-            }
-          }
-        }
-
         break;
 
       case TYPE_JAR:
@@ -151,75 +155,108 @@ public class ContextUnit {
           resultSaver.saveDirEntry(archivePath, filename, dirEntry);
         }
 
-        // non-class entries
+        // non-class entries, but the record of an earlier run which is replaced by the one of this run
         for (String[] pair : otherEntries) {
-          if (type != TYPE_JAR || !JarFile.MANIFEST_NAME.equalsIgnoreCase(pair[1])) {
+          if ((type != TYPE_JAR || !JarFile.MANIFEST_NAME.equalsIgnoreCase(pair[1])) && !IncrementalHelper.RECORD_ENTRY.equals(pair[1])) {
             resultSaver.copyEntry(pair[0], archivePath, filename, pair[1]);
           }
         }
+    }
+  }
 
-        //Whooo threads!
-        int threads = DecompilerContext.getThreads();
-        if (threads > 1) {
-
-          DecompilerContext rootContext = DecompilerContext.getCurrentContext();
-          ExecutorService executor = Executors.newFixedThreadPool(threads);
-
-          //Compute the classes we need to decomp.
-          List<ClassContext> toProcess = IntStream.range(0, classes.size()).parallel()
-            .mapToObj(i -> {
-              StructClass cl = classes.get(i);
-              return new ClassContext(cl, decompiledData.getClassEntryName(cl, classEntries.get(i)));
-            })
-            .filter(e -> e.entryName != null)
-            .collect(Collectors.toList());
-          List<Future<?>> futures = new ArrayList<>(toProcess.size());
-
-          //Submit preprocessor jobs.
-          for (ClassContext clCtx : toProcess) {
-            futures.add(executor.submit(() -> {
-              DecompilerContext.cloneContext(rootContext);
-              clCtx.ctx = DecompilerContext.getCurrentContext();
-              clCtx.shouldContinue = decompiledData.processClass(clCtx.cl);
-              DecompilerContext.setCurrentContext(null);
-            }));
-          }
+  /**
+   * Adds a task for every class of this unit which produces an output entry.
+   * Must be called after {@link #startSave()}, and {@link #finishSave()} only once all tasks are done.
+   */
+  void collectClassTasks(List<ClassTask> tasks) {
+    for (int i = 0; i < classes.size(); i++) {
+      StructClass cl = classes.get(i);
+      String entryName = decompiledData.getClassEntryName(cl, classEntries.get(i));
+      if (entryName != null) {
+        if (previousOutput != null && unchangedClasses.contains(cl.qualifiedName) && previousEntries.contains(entryName)) {
+          resultSaver.copyEntry(previousOutput, archivePath, filename, entryName);
+        }
+        else {
+          tasks.add(new ClassTask(this, cl, entryName));
+        }
+      }
+    }
+  }
+
+  void finishSave() {
+    if (type == TYPE_JAR || type == TYPE_ZIP) {
+      String record = decompiledData.getOutputRecord(this);
+      if (record != null) {
+        resultSaver.saveClassEntry(archivePath, filename, null, IncrementalHelper.RECORD_ENTRY, record);
+      }
+      resultSaver.closeArchive(archivePath, filename);
+    }
+  }
+
+  private void saveClass(StructClass cl, String entryName, String content, int[] mapping) {
+    if (type == TYPE_FOLDER) {
+      if (content != null) {
+        resultSaver.saveClassFile(filename, cl.qualifiedName, entryName, content, mapping);
+      }
+    }
+    else {
+      resultSaver.saveClassEntry(archivePath, filename, cl.qualifiedName, entryName, content);
+    }
+  }
 
-          //Ask the executor to shutdown
-          executor.shutdown();
-          waitForAll(futures);
-          futures.clear();
-
-          executor = Executors.newFixedThreadPool(threads);
-
-          // classes
-          for (ClassContext clCtx : toProcess) {
-            if (clCtx.shouldContinue) {
-              futures.add(executor.submit(() -> {
-                DecompilerContext.setCurrentContext(clCtx.ctx);
-                String content = decompiledData.getClassContent(clCtx.cl);
-                resultSaver.saveClassEntry(archivePath, filename, clCtx.cl.qualifiedName, clCtx.entryName, content);
-                DecompilerContext.setCurrentContext(null);
-              }));
-            }
+  private void writeClass(StructClass cl, String entryName, TextBuffer buffer, int[] mapping) {
+    if (type == TYPE_FOLDER && buffer == null) {
+      return;
+    }
+
+    try (Writer out = type == TYPE_FOLDER ? resultSaver.openClassFile(filename, cl.qualifiedName, entryName, mapping)
+                                          : resultSaver.openClassEntry(archivePath, filename, cl.qualifiedName, entryName)) {
+      if (buffer != null) {
+        buffer.writeTo(out);
+      }
+    }
+    catch (IOException ex) {
+      DecompilerContext.getLogger().writeMessage("Cannot write class " + cl.qualifiedName, ex);
+    }
+  }
+
+  /**
+   * Runs the given tasks, which may belong to different units, on one shared pool when threads are enabled.
+   * The most expensive classes are started first, so that a huge class submitted last doesn't stretch the run.
+   */
+  static void runClassTasks(List<ClassTask> tasks) {
+    //Whooo threads!
+    int threads = DecompilerContext.getThreads();
+    if (threads > 1) {
+
+      List<ClassTask> ordered = new ArrayList<>(tasks);
+      ordered.sort(Comparator.comparingLong((ClassTask task) -> task.cost).reversed());
+
+      DecompilerContext rootContext = DecompilerContext.getCurrentContext();
+      ForkJoinPool pool = new ForkJoinPool(threads);
+      List<Future<?>> futures = new ArrayList<>(ordered.size());
+
+      // each class goes from processing to writing as soon as it is ready
+      for (ClassTask task : ordered) {
+        futures.add(pool.submit(() -> {
+          DecompilerContext.cloneContext(rootContext);
+          try {
+            task.run();
           }
-          executor.shutdown();
-          waitForAll(futures);
-        } else {
-          // classes
-          for (int i = 0; i < classes.size(); i++) {
-            StructClass cl = classes.get(i);
-            String entryName = decompiledData.getClassEntryName(cl, classEntries.get(i));
-            if (entryName != null) {
-              if (decompiledData.processClass(cl)) {
-                String content = decompiledData.getClassContent(cl);
-                resultSaver.saveClassEntry(archivePath, filename, cl.qualifiedName, entryName, content);
-              }
-            }
+          finally {
+            DecompilerContext.setCurrentContext(null);
           }
-        }
+        }));
+      }
 
-        resultSaver.closeArchive(archivePath, filename);
+      //Ask the pool to shutdown
+      pool.shutdown();
+      waitForAll(futures);
+    }
+    else {
+      for (ClassTask task : tasks) {
+        task.run();
+      }
     }
   }
 
@@ -233,6 +270,18 @@ public class ContextUnit {
     }
   }
 
+  /**
+   * Makes an archive unit copy the output of the given unchanged root classes from the output archive of a previous run
+   * instead of decompiling them.
+   */
+  public void setPreviousOutput(String previousOutput, Set<String> previousEntries, Set<String> unchangedClasses) {
+    if (type == TYPE_JAR || type == TYPE_ZIP) {
+      this.previousOutput = previousOutput;
+      this.previousEntries = previousEntries;
+      this.unchangedClasses = unchangedClasses;
+    }
+  }
+
   public void setManifest(Manifest manifest) {
     this.manifest = manifest;
   }
@@ -245,16 +294,59 @@ public class ContextUnit {
     return classes;
   }
 
-  private static class ClassContext {
-    public final StructClass cl;
-    public final String entryName;
-    public boolean shouldContinue;
-    public DecompilerContext ctx;
+  public List<String> getClassEntries() {
+    return classEntries;
+  }
+
+  static class ClassTask {
+    final ContextUnit unit;
+    final StructClass cl;
+    final String entryName;
+    final long cost;
 
-    private ClassContext(StructClass cl, String entryName) {
+    private ClassTask(ContextUnit unit, StructClass cl, String entryName) {
+      this.unit = unit;
       this.cl = cl;
       this.entryName = entryName;
+      this.cost = unit.decompiledData.getClassCost(cl);
     }
-  }
 
+    void run() {
+      DecompilationCache cache = unit.decompiledData.getCache();
+      String key = null;
+      if (cache != null) {
+        try {
+          key = cache.getKey(cl);
+        }
+        catch (IOException ex) {
+          DecompilerContext.getLogger().writeMessage("Cannot compute cache key of class " + cl.qualifiedName, Severity.WARN, ex);
+        }
+      }
+
+      DecompilationCache.Entry cached = key != null ? cache.load(key) : null;
+      if (cached != null) {
+        DecompilerContext.getLogger().writeMessage("Using cached source of class " + cl.qualifiedName, Severity.INFO);
+        unit.saveClass(cl, entryName, cached.content, cached.mapping);
+      }
+      else if (unit.decompiledData.processClass(cl)) {
+        TextBuffer buffer = unit.decompiledData.getClassBuffer(cl);
+        int[] mapping = null;
+        if (buffer != null && DecompilerContext.getOption(IFernflowerPreferences.BYTECODE_SOURCE_MAPPING)) {
+          mapping = DecompilerContext.getBytecodeSourceMapper().getOriginalLinesMapping();
+        }
+        if (key != null && buffer != null) {
+          String content = buffer.toString();
+          cache.save(key, content, mapping);
+          unit.saveClass(cl, entryName, content, mapping);
+        }
+        else {
+          unit.writeClass(cl, entryName, buffer, mapping);
+        }
+      }
+
+      if (DecompilerContext.getOption(IFernflowerPreferences.LOW_MEMORY)) {
+        unit.decompiledData.releaseClass(cl);
+      }
+    }
+  }
 }
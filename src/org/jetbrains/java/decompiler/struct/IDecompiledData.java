@@ -1,6 +1,10 @@
 // Copyright 2000-2017 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
 package org.jetbrains.java.decompiler.struct;
 
+import org.jetbrains.java.decompiler.main.DecompilationCache;
+import org.jetbrains.java.decompiler.main.IncrementalHelper;
+import org.jetbrains.java.decompiler.util.TextBuffer;
+
 public interface IDecompiledData {
 
   String getClassEntryName(StructClass cl, String entryname);
@@ -8,4 +12,42 @@ public interface IDecompiledData {
   boolean processClass(StructClass cl);
 
   String getClassContent(StructClass cl);
+
+  /**
+   * Same as {@link #getClassContent}, but leaves the source in the buffer it was written to, so that it can be streamed to the saver.
+   */
+  default TextBuffer getClassBuffer(StructClass cl) {
+    String content = getClassContent(cl);
+    return content == null ? null : new TextBuffer(content);
+  }
+
+  /**
+   * Rough estimate of the work needed to decompile the given class, used to schedule expensive classes first.
+   */
+  default long getClassCost(StructClass cl) {
+    long cost = 0;
+    for (StructMethod mt : cl.getMethods()) {
+      cost += mt.getCodeFullLength();
+    }
+    return cost;
+  }
+
+  /**
+   * Called once the given class is written, to release what is no longer needed for it.
+   */
+  default void releaseClass(StructClass cl) { }
+
+  /**
+   * @return the cache of classes decompiled in earlier runs, or null if there is none
+   */
+  default DecompilationCache getCache() {
+    return null;
+  }
+
+  /**
+   * @return the text of the {@link IncrementalHelper#RECORD_ENTRY} written to the output archive of the given unit, or null to write none
+   */
+  default String getOutputRecord(ContextUnit unit) {
+    return null;
+  }
 }
@@ -58,9 +58,8 @@ public class StructClass extends StructMember {
   private final int majorVersion;
   private final int[] interfaces;
   private final String[] interfaceNames;
-  private final VBStyleCollection<StructField, String> fields;
-  private final VBStyleCollection<StructMethod, String> methods;
-  private GenericClassDescriptor signature = null;
+  private final int bodyOffset;
+  private volatile Body body;
 
   private ConstantPool pool;
 
@@ -94,9 +93,36 @@ public class StructClass extends StructMember {
       interfaceNames[i] = pool.getPrimitiveConstant(interfaces[i]).getString();
     }
 
+    // library classes are mostly asked for their hierarchy only, so their members and attributes are read on first use
+    bodyOffset = in.getOffset();
+    if (own || loader == null) {
+      body = readBody(in, pool);
+    }
+
+    releaseResources();
+  }
+
+  private static class Body {
+    private final VBStyleCollection<StructField, String> fields;
+    private final VBStyleCollection<StructMethod, String> methods;
+    private final Map<String, StructGeneralAttribute> attributes;
+    private final GenericClassDescriptor signature;
+
+    private Body(VBStyleCollection<StructField, String> fields,
+                 VBStyleCollection<StructMethod, String> methods,
+                 Map<String, StructGeneralAttribute> attributes,
+                 GenericClassDescriptor signature) {
+      this.fields = fields;
+      this.methods = methods;
+      this.attributes = attributes;
+      this.signature = signature;
+    }
+  }
+
+  private Body readBody(DataInputFullStream in, ConstantPool pool) throws IOException {
     // fields
-    length = in.readUnsignedShort();
-    fields = new VBStyleCollection<>(length);
+    int length = in.readUnsignedShort();
+    VBStyleCollection<StructField, String> fields = new VBStyleCollection<>(length);
     for (int i = 0; i < length; i++) {
       StructField field = new StructField(in, this);
       fields.addWithKey(field, InterpreterUtil.makeUniqueKey(field.getName(), field.getDescriptor()));
@@ -104,16 +130,67 @@ public class StructClass extends StructMember {
 
     // methods
     length = in.readUnsignedShort();
-    methods = new VBStyleCollection<>(length);
+    VBStyleCollection<StructMethod, String> methods = new VBStyleCollection<>(length);
     for (int i = 0; i < length; i++) {
       StructMethod method = new StructMethod(in, this);
       methods.addWithKey(method, InterpreterUtil.makeUniqueKey(method.getName(), method.getDescriptor()));
     }
 
     // attributes
-    attributes = readAttributes(in, pool);
+    Map<String, StructGeneralAttribute> attributes = readAttributes(in, pool);
 
-    releaseResources();
+    GenericClassDescriptor signature = null;
+    StructGenericSignatureAttribute signatureAttribute =
+      (StructGenericSignatureAttribute)attributes.get(StructGeneralAttribute.ATTRIBUTE_SIGNATURE.getName());
+    if (signatureAttribute != null && DecompilerContext.getOption(IFernflowerPreferences.DECOMPILE_GENERIC_SIGNATURES)) {
+      signature = GenericMain.parseClassSignature(qualifiedName, signatureAttribute.getSignature());
+    }
+
+    return new Body(fields, methods, attributes, signature);
+  }
+
+  private Body getBody() {
+    Body body = this.body;
+    if (body == null) {
+      synchronized (this) {
+        body = this.body;
+        if (body == null) {
+          try (DataInputFullStream in = loader.getClassStream(qualifiedName)) {
+            if (in == null) {
+              throw new IllegalStateException("No bytecode for class " + qualifiedName);
+            }
+            in.discard(bodyOffset);
+            this.body = body = readBody(in, getPool());
+          }
+          catch (IOException ex) {
+            throw new RuntimeException(ex);
+          }
+          releaseResources();
+        }
+      }
+    }
+    return body;
+  }
+
+  /**
+   * Drops the members and attributes of this class, which are read again from its class file when next asked for.
+   * Members handed out before stay valid, but are no longer the ones this class returns.
+   */
+  public void releaseBody() {
+    if (loader != null) {
+      body = null;
+    }
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T extends StructGeneralAttribute> T getAttribute(StructGeneralAttribute.Key<T> attribute) {
+    return (T)getBody().attributes.get(attribute.getName());
+  }
+
+  @Override
+  public boolean hasAttribute(StructGeneralAttribute.Key<?> attribute) {
+    return getBody().attributes.containsKey(attribute.getName());
   }
 
   public boolean hasField(String name, String descriptor) {
@@ -121,15 +198,15 @@ public class StructClass extends StructMember {
   }
 
   public StructField getField(String name, String descriptor) {
-    return fields.getWithKey(InterpreterUtil.makeUniqueKey(name, descriptor));
+    return getBody().fields.getWithKey(InterpreterUtil.makeUniqueKey(name, descriptor));
   }
 
   public StructMethod getMethod(String key) {
-    return methods.getWithKey(key);
+    return getBody().methods.getWithKey(key);
   }
 
   public StructMethod getMethod(String name, String descriptor) {
-    return methods.getWithKey(InterpreterUtil.makeUniqueKey(name, descriptor));
+    return getBody().methods.getWithKey(InterpreterUtil.makeUniqueKey(name, descriptor));
   }
 
   public StructMethod getMethodRecursive(String name, String descriptor) {
@@ -172,8 +249,9 @@ public class StructClass extends StructMember {
   }
 
   public ConstantPool getPool() {
+    ConstantPool pool = this.pool;
     if (pool == null && loader != null) {
-      pool = loader.loadPool(qualifiedName);
+      this.pool = pool = loader.loadPool(qualifiedName);
     }
     return pool;
   }
@@ -187,11 +265,11 @@ public class StructClass extends StructMember {
   }
 
   public VBStyleCollection<StructMethod, String> getMethods() {
-    return methods;
+    return getBody().methods;
   }
 
   public VBStyleCollection<StructField, String> getFields() {
-    return fields;
+    return getBody().fields;
   }
 
   public boolean isOwn() {
@@ -221,33 +299,24 @@ public class StructClass extends StructMember {
   }
 
   public GenericClassDescriptor getSignature() {
-    return signature;
-  }
-
-  @Override
-  protected StructGeneralAttribute readAttribute(DataInputFullStream in, ConstantPool pool, String name) throws IOException {
-    StructGeneralAttribute attribute = super.readAttribute(in, pool, name);
-    if ("Signature".equals(name) && DecompilerContext.getOption(IFernflowerPreferences.DECOMPILE_GENERIC_SIGNATURES)) {
-      StructGenericSignatureAttribute signature = (StructGenericSignatureAttribute)attribute;
-      this.signature = GenericMain.parseClassSignature(qualifiedName, signature.getSignature());
-    }
-    return attribute;
+    return getBody().signature;
   }
 
   private Map<VarType, VarType> getGenericMap(VarType type) {
-    if (this.signature == null || type == null || !type.isGeneric()) {
+    GenericClassDescriptor signature = getSignature();
+    if (signature == null || type == null || !type.isGeneric()) {
       return Collections.emptyMap();
     }
     GenericType gtype = (GenericType)type;
-    if (gtype.getArguments().size() != this.signature.fparameters.size()) { //Invalid instance type?
+    if (gtype.getArguments().size() != signature.fparameters.size()) { //Invalid instance type?
       return Collections.emptyMap();
     }
 
     Map<VarType, VarType> ret = new HashMap<>();
-    for (int x = 0; x < this.signature.fparameters.size(); x++) {
+    for (int x = 0; x < signature.fparameters.size(); x++) {
       VarType var = gtype.getArguments().get(x);
       if (var != null) {
-        ret.put(GenericType.parse("T" + this.signature.fparameters.get(x) + ";"), var);
+        ret.put(GenericType.parse("T" + signature.fparameters.get(x) + ";"), var);
       }
     }
     return ret;
@@ -258,11 +327,12 @@ public class StructClass extends StructMember {
     if (genericHiarachy != null) {
       return genericHiarachy;
     }
+    GenericClassDescriptor signature = getSignature();
 
     Map<String, Map<VarType, VarType>> ret = new HashMap<>();
-    if (this.signature != null && !this.signature.fparameters.isEmpty()) {
+    if (signature != null && !signature.fparameters.isEmpty()) {
       Map<VarType, VarType> mine = new HashMap<>();
-      for (String par : this.signature.fparameters) {
+      for (String par : signature.fparameters) {
         VarType type = GenericType.parse("T" + par + ";");
         mine.put(type, type);
       }
@@ -270,8 +340,8 @@ public class StructClass extends StructMember {
     }
 
     Set<String> visited = new HashSet<>(); //Is there a better way? Is the signature forced to contain all interfaces?
-    if (this.signature != null) {
-      for (VarType intf : this.signature.superinterfaces) {
+    if (signature != null) {
+      for (VarType intf : signature.superinterfaces) {
         visited.add((String)intf.value);
 
         StructClass cls = DecompilerContext.getStructContext().getClass((String)intf.value);
@@ -307,7 +377,7 @@ public class StructClass extends StructMember {
     if (this.superClass != null) {
       StructClass cls = DecompilerContext.getStructContext().getClass((String)this.superClass.value);
       if (cls != null) {
-        Map<VarType, VarType> sig = this.signature == null ? Collections.emptyMap() : cls.getGenericMap(this.signature.superclass);
+        Map<VarType, VarType> sig = signature == null ? Collections.emptyMap() : cls.getGenericMap(signature.superclass);
         if (sig.isEmpty()) {
           ret.putAll(cls.getAllGenerics());
         }
@@ -13,10 +13,15 @@ import org.jetbrains.java.decompiler.util.InterpreterUtil;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.jar.JarFile;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
@@ -28,7 +33,8 @@ public class StructContext {
   private final LazyLoader loader;
   private final Map<String, ContextUnit> units = new HashMap<>();
   private final Map<String, StructClass> classes = new HashMap<>();
-  private final Map<String, List<String>> abstractNames = new HashMap<>();
+  // class name -> method name and descriptor -> parameter names
+  private final Map<String, Map<String, List<String>>> abstractNames = new HashMap<>();
 
   public StructContext(IResultSaver saver, IDecompiledData decompiledData, LazyLoader loader) {
     this.saver = saver;
@@ -43,6 +49,22 @@ public class StructContext {
     return classes.get(name);
   }
 
+  /**
+   * Makes the library classes of another context, and the abstract parameter names loaded with them, visible in this one
+   * without loading them again. Classes and names added to this context afterwards take precedence over them.
+   */
+  public void addLibraries(StructContext libraries) {
+    for (StructClass cl : libraries.classes.values()) {
+      if (!cl.isOwn()) {
+        classes.put(cl.qualifiedName, cl);
+      }
+    }
+    // copied, as names loaded later are added to the map of their class
+    for (Map.Entry<String, Map<String, List<String>>> entry : libraries.abstractNames.entrySet()) {
+      abstractNames.computeIfAbsent(entry.getKey(), k -> new HashMap<>()).putAll(entry.getValue());
+    }
+  }
+
   public void reloadContext() throws IOException {
     for (ContextUnit unit : units.values()) {
       for (StructClass cl : unit.getClasses()) {
@@ -59,11 +81,38 @@ public class StructContext {
   }
 
   public void saveContext() {
-    for (ContextUnit unit : units.values()) {
-      if (unit.isOwn()) {
-        unit.save();
+    if (DecompilerContext.getThreads() > 1) {
+      // schedule the classes of all units on one shared pool, so that many small units can still keep it busy
+      List<ContextUnit> ownUnits = new ArrayList<>();
+      List<ContextUnit.ClassTask> tasks = new ArrayList<>();
+      for (ContextUnit unit : units.values()) {
+        if (unit.isOwn()) {
+          unit.startSave();
+          unit.collectClassTasks(tasks);
+          ownUnits.add(unit);
+        }
+      }
+
+      ContextUnit.runClassTasks(tasks);
+
+      for (ContextUnit unit : ownUnits) {
+        unit.finishSave();
       }
     }
+    else {
+      for (ContextUnit unit : units.values()) {
+        if (unit.isOwn()) {
+          unit.save();
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the unit of an archive added with {@link #addSpace(File, boolean)}, or null if the file was not added as an archive
+   */
+  public ContextUnit getArchiveUnit(File file) {
+    return units.get("/" + file.getName());
   }
 
   public void addSpace(File file, boolean isOwn) {
@@ -133,40 +182,95 @@ public class StructContext {
   private void addArchive(String path, File file, int type, boolean isOwn) throws IOException {
     DecompilerContext.getLogger().writeMessage("Adding Archive: " + file.getAbsolutePath(), Severity.INFO);
     try (ZipFile archive = type == ContextUnit.TYPE_JAR ? new JarFile(file) : new ZipFile(file)) {
-      Enumeration<? extends ZipEntry> entries = archive.entries();
-      while (entries.hasMoreElements()) {
-        ZipEntry entry = entries.nextElement();
+      // with threads, entries are inflated and parsed in parallel, then linked in archive order below
+      int threads = DecompilerContext.getThreads();
+      ExecutorService executor = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+      DecompilerContext rootContext = DecompilerContext.getCurrentContext();
+      List<String> pendingNames = new ArrayList<>();
+      List<Future<StructClass>> pendingClasses = new ArrayList<>();
+      ContextUnit unit = null;
 
-        ContextUnit unit = units.get(path + "/" + file.getName());
-        if (unit == null) {
-          unit = new ContextUnit(type, path, file.getName(), isOwn, saver, decompiledData);
-          if (type == ContextUnit.TYPE_JAR) {
-            unit.setManifest(((JarFile)archive).getManifest());
+      try {
+        Enumeration<? extends ZipEntry> entries = archive.entries();
+        while (entries.hasMoreElements()) {
+          ZipEntry entry = entries.nextElement();
+
+          unit = units.get(path + "/" + file.getName());
+          if (unit == null) {
+            unit = new ContextUnit(type, path, file.getName(), isOwn, saver, decompiledData);
+            if (type == ContextUnit.TYPE_JAR) {
+              unit.setManifest(((JarFile)archive).getManifest());
+            }
+            units.put(path + "/" + file.getName(), unit);
           }
-          units.put(path + "/" + file.getName(), unit);
-        }
 
-        String name = entry.getName();
-        if (!entry.isDirectory()) {
-          if (name.endsWith(".class")) {
-            byte[] bytes = InterpreterUtil.getBytes(archive, entry);
-            DecompilerContext.getLogger().writeMessage("  Loading Class: " + name, Severity.INFO);
-            StructClass cl = new StructClass(bytes, isOwn, loader);
-            classes.put(cl.qualifiedName, cl);
-            unit.addClass(cl, name);
-            loader.addClassLink(cl.qualifiedName, new LazyLoader.Link(file.getAbsolutePath(), name));
+          String name = entry.getName();
+          if (!entry.isDirectory()) {
+            if (name.endsWith(".class")) {
+              if (executor != null) {
+                pendingNames.add(name);
+                pendingClasses.add(executor.submit(() -> {
+                  DecompilerContext.cloneContext(rootContext);
+                  try {
+                    return loadArchiveClass(archive, entry, isOwn);
+                  }
+                  finally {
+                    DecompilerContext.setCurrentContext(null);
+                  }
+                }));
+              }
+              else {
+                addArchiveClass(unit, file, name, loadArchiveClass(archive, entry, isOwn));
+              }
+            }
+            else {
+              unit.addOtherEntry(file.getAbsolutePath(), name);
+            }
           }
           else {
-            unit.addOtherEntry(file.getAbsolutePath(), name);
+            unit.addDirEntry(name);
           }
         }
-        else {
-          unit.addDirEntry(name);
+
+        for (int i = 0; i < pendingClasses.size(); i++) {
+          addArchiveClass(unit, file, pendingNames.get(i), getLoadedClass(pendingClasses.get(i)));
+        }
+      }
+      finally {
+        if (executor != null) {
+          executor.shutdownNow();
         }
       }
     }
   }
 
+  private StructClass loadArchiveClass(ZipFile archive, ZipEntry entry, boolean isOwn) throws IOException {
+    byte[] bytes = InterpreterUtil.getBytes(archive, entry);
+    DecompilerContext.getLogger().writeMessage("  Loading Class: " + entry.getName(), Severity.INFO);
+    return new StructClass(bytes, isOwn, loader);
+  }
+
+  private void addArchiveClass(ContextUnit unit, File file, String name, StructClass cl) {
+    classes.put(cl.qualifiedName, cl);
+    unit.addClass(cl, name);
+    loader.addClassLink(cl.qualifiedName, new LazyLoader.Link(file.getAbsolutePath(), name));
+  }
+
+  private static StructClass getLoadedClass(Future<StructClass> future) throws IOException {
+    try {
+      return future.get();
+    }
+    catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException)e.getCause();
+      }
+      throw new RuntimeException(e.getCause());
+    }
+    catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
   public void addData(String path, String cls, byte[] data, boolean isOwn) throws IOException {
         ContextUnit unit = units.get(path);
         if (unit == null) {
@@ -239,12 +343,19 @@ public class StructContext {
         for (int y = 0; y < desc.parameterTypes.get(x).stackSize; y++)
             params.add(pts[x+3]);
       }
-      this.abstractNames.put(pts[0] + ' '+ pts[1] + ' ' + pts[2], params);
+      this.abstractNames.computeIfAbsent(pts[0], k -> new HashMap<>()).put(pts[1] + ' ' + pts[2], params);
     }
   }
 
   public String renameAbstractParameter(String className, String methodName, String descriptor, int index, String _default) {
-    List<String> params = this.abstractNames.get(className + ' ' + methodName + ' ' + descriptor);
+    List<String> params = getAbstractNames(className).get(methodName + ' ' + descriptor);
     return params != null && index < params.size() ? params.get(index) : _default;
   }
+
+  /**
+   * @return the parameter names loaded for abstract methods of the given class, keyed by method name and descriptor
+   */
+  public Map<String, List<String>> getAbstractNames(String className) {
+    return abstractNames.getOrDefault(className, Collections.emptyMap());
+  }
 }
@@ -45,6 +45,7 @@ public class StructMethod extends StructMember {
   private int localVariables = 0;
   private int codeLength = 0;
   private int codeFullLength = 0;
+  private int codeOffset = -1;
   private InstructionSequence seq;
   private boolean expanded = false;
   private Map<String, StructGeneralAttribute> codeAttributes;
@@ -83,6 +84,7 @@ public class StructMethod extends StructMember {
         in.discard(6);
         localVariables = in.readUnsignedShort();
         codeLength = in.readInt();
+        codeOffset = in.getOffset();
         in.discard(codeLength);
         int excLength = in.readUnsignedShort();
         in.discard(excLength * 8);
@@ -105,8 +107,8 @@ public class StructMethod extends StructMember {
 
   public void expandData() throws IOException {
     if (containsCode && !expanded) {
-      byte[] code = classStruct.getLoader().loadBytecode(this, codeFullLength);
-      seq = parseBytecode(new DataInputFullStream(code), codeLength, classStruct.getPool());
+      DataInputFullStream code = classStruct.getLoader().getCodeStream(this, codeOffset, codeFullLength);
+      seq = parseBytecode(code, codeLength, classStruct.getPool());
       expanded = true;
     }
   }
@@ -389,6 +391,10 @@ public class StructMethod extends StructMember {
     return localVariables;
   }
 
+  public int getCodeFullLength() {
+    return codeFullLength;
+  }
+
   public InstructionSequence getInstructionSequence() {
     return seq;
   }
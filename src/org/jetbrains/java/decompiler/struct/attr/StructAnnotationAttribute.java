@@ -9,7 +9,6 @@ import org.jetbrains.java.decompiler.struct.gen.FieldDescriptor;
 import org.jetbrains.java.decompiler.struct.gen.VarType;
 import org.jetbrains.java.decompiler.util.DataInputFullStream;
 
-import java.io.DataInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -23,7 +22,7 @@ public class StructAnnotationAttribute extends StructGeneralAttribute {
     annotations = parseAnnotations(pool, data);
   }
 
-  public static List<AnnotationExprent> parseAnnotations(ConstantPool pool, DataInputStream data) throws IOException {
+  public static List<AnnotationExprent> parseAnnotations(ConstantPool pool, DataInputFullStream data) throws IOException {
     int len = data.readUnsignedShort();
     if (len > 0) {
       List<AnnotationExprent> annotations = new ArrayList<>(len);
@@ -37,7 +36,7 @@ public class StructAnnotationAttribute extends StructGeneralAttribute {
     }
   }
 
-  public static AnnotationExprent parseAnnotation(DataInputStream data, ConstantPool pool) throws IOException {
+  public static AnnotationExprent parseAnnotation(DataInputFullStream data, ConstantPool pool) throws IOException {
     String className = pool.getPrimitiveConstant(data.readUnsignedShort()).getString();
 
     List<String> names;
@@ -59,7 +58,7 @@ public class StructAnnotationAttribute extends StructGeneralAttribute {
     return new AnnotationExprent(new VarType(className).value, names, values);
   }
 
-  public static Exprent parseAnnotationElement(DataInputStream data, ConstantPool pool) throws IOException {
+  public static Exprent parseAnnotationElement(DataInputFullStream data, ConstantPool pool) throws IOException {
     int tag = data.readUnsignedByte();
 
     switch (tag) {
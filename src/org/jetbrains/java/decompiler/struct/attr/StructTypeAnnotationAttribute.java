@@ -6,7 +6,6 @@ import org.jetbrains.java.decompiler.modules.decompiler.exps.TypeAnnotation;
 import org.jetbrains.java.decompiler.struct.consts.ConstantPool;
 import org.jetbrains.java.decompiler.util.DataInputFullStream;
 
-import java.io.DataInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -29,7 +28,7 @@ public class StructTypeAnnotationAttribute extends StructGeneralAttribute {
     }
   }
 
-  private static TypeAnnotation parse(DataInputStream data, ConstantPool pool) throws IOException {
+  private static TypeAnnotation parse(DataInputFullStream data, ConstantPool pool) throws IOException {
     int targetType = data.readUnsignedByte();
     int target = targetType << 24;
 
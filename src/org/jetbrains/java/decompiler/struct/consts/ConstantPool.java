@@ -10,96 +10,34 @@ import org.jetbrains.java.decompiler.struct.gen.NewClassNameBuilder;
 import org.jetbrains.java.decompiler.struct.gen.VarType;
 import org.jetbrains.java.decompiler.util.DataInputFullStream;
 
-import java.io.DataInputStream;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.BitSet;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 @SuppressWarnings("AssignmentToForLoopParameter")
 public class ConstantPool implements NewClassNameBuilder {
   public static final int FIELD = 1;
   public static final int METHOD = 2;
 
-  private final List<PooledConstant> pool;
+  private final ByteBuffer data;
+  private final int[] offsets;
+  private final AtomicReferenceArray<PooledConstant> pool;
   private final PoolInterceptor interceptor;
 
-  public ConstantPool(DataInputStream in) throws IOException {
+  /**
+   * Only records where each entry starts; entries are decoded (and complex ones resolved) the first time they are requested,
+   * so pools of library classes, of which usually only a few class names are ever needed, stay mostly undecoded.
+   */
+  public ConstantPool(DataInputFullStream in) throws IOException {
     int size = in.readUnsignedShort();
-    pool = new ArrayList<>(size);
-    BitSet[] nextPass = {new BitSet(size), new BitSet(size), new BitSet(size)};
-
-    // first dummy constant
-    pool.add(null);
-
-    // first pass: read the elements
-    for (int i = 1; i < size; i++) {
-      byte tag = (byte)in.readUnsignedByte();
-
-      switch (tag) {
-        case CodeConstants.CONSTANT_Utf8:
-          pool.add(new PrimitiveConstant(CodeConstants.CONSTANT_Utf8, in.readUTF()));
-          break;
-
-        case CodeConstants.CONSTANT_Integer:
-          pool.add(new PrimitiveConstant(CodeConstants.CONSTANT_Integer, Integer.valueOf(in.readInt())));
-          break;
-
-        case CodeConstants.CONSTANT_Float:
-          pool.add(new PrimitiveConstant(CodeConstants.CONSTANT_Float, in.readFloat()));
-          break;
-
-        case CodeConstants.CONSTANT_Long:
-          pool.add(new PrimitiveConstant(CodeConstants.CONSTANT_Long, in.readLong()));
-          pool.add(null);
-          i++;
-          break;
-
-        case CodeConstants.CONSTANT_Double:
-          pool.add(new PrimitiveConstant(CodeConstants.CONSTANT_Double, in.readDouble()));
-          pool.add(null);
-          i++;
-          break;
-
-        case CodeConstants.CONSTANT_Class:
-        case CodeConstants.CONSTANT_String:
-        case CodeConstants.CONSTANT_MethodType:
-        case CodeConstants.CONSTANT_Module:
-        case CodeConstants.CONSTANT_Package:
-          pool.add(new PrimitiveConstant(tag, in.readUnsignedShort()));
-          nextPass[0].set(i);
-          break;
-
-        case CodeConstants.CONSTANT_NameAndType:
-          pool.add(new LinkConstant(tag, in.readUnsignedShort(), in.readUnsignedShort()));
-          nextPass[0].set(i);
-          break;
-
-        case CodeConstants.CONSTANT_Fieldref:
-        case CodeConstants.CONSTANT_Methodref:
-        case CodeConstants.CONSTANT_InterfaceMethodref:
-        case CodeConstants.CONSTANT_InvokeDynamic:
-          pool.add(new LinkConstant(tag, in.readUnsignedShort(), in.readUnsignedShort()));
-          nextPass[1].set(i);
-          break;
-
-        case CodeConstants.CONSTANT_MethodHandle:
-          pool.add(new LinkConstant(tag, in.readUnsignedByte(), in.readUnsignedShort()));
-          nextPass[2].set(i);
-          break;
-
-        default:
-          throw new RuntimeException("Invalid Constant Pool entry #" + i + " Type: " + tag);
-      }
-    }
-
-    // resolving complex pool elements
-    for (BitSet pass : nextPass) {
-      int idx = 0;
-      while ((idx = pass.nextSetBit(idx + 1)) > 0) {
-        pool.get(idx).resolveConstant(this);
-      }
-    }
+    int start = in.getOffset();
+    offsets = new int[size];
+    scanPool(in, size, offsets, start);
+    // a copy of just the pool, a view would keep the whole class file (code included) alive as long as the pool
+    byte[] bytes = new byte[in.getOffset() - start];
+    in.getBuffer(start, bytes.length).get(bytes);
+    data = ByteBuffer.wrap(bytes);
+    pool = new AtomicReferenceArray<>(size);
 
     // get global constant pool interceptor instance, if any available
     interceptor = DecompilerContext.getPoolInterceptor();
@@ -107,12 +45,24 @@ public class ConstantPool implements NewClassNameBuilder {
 
   public static void skipPool(DataInputFullStream in) throws IOException {
     int size = in.readUnsignedShort();
+    scanPool(in, size, null, 0);
+  }
+
+  private static void scanPool(DataInputFullStream in, int size, int[] offsets, int start) throws IOException {
+    if (offsets != null && size > 0) {
+      // first dummy constant
+      offsets[0] = -1;
+    }
 
     for (int i = 1; i < size; i++) {
+      if (offsets != null) {
+        offsets[i] = in.getOffset() - start;
+      }
+
       byte tag = (byte)in.readUnsignedByte();
       switch (tag) {
         case CodeConstants.CONSTANT_Utf8:
-          in.readUTF();
+          in.discard(in.readUnsignedShort());
           break;
 
         case CodeConstants.CONSTANT_Integer:
@@ -129,6 +79,9 @@ public class ConstantPool implements NewClassNameBuilder {
         case CodeConstants.CONSTANT_Double:
           in.discard(8);
           i++;
+          if (offsets != null && i < size) {
+            offsets[i] = -1;
+          }
           break;
 
         case CodeConstants.CONSTANT_Class:
@@ -144,11 +97,62 @@ public class ConstantPool implements NewClassNameBuilder {
           break;
 
         default:
-            throw new RuntimeException("Invalid Constant Pool entry #" + i + " Type: " + tag);
+          throw new RuntimeException("Invalid Constant Pool entry #" + i + " Type: " + tag);
       }
     }
   }
 
+  private PooledConstant readConstant(int index) throws IOException {
+    int offset = offsets[index];
+    byte tag = data.get(offset);
+
+    PooledConstant constant;
+    switch (tag) {
+      case CodeConstants.CONSTANT_Utf8:
+        DataInputFullStream in = new DataInputFullStream((ByteBuffer)data.duplicate().position(offset + 1));
+        return new PrimitiveConstant(CodeConstants.CONSTANT_Utf8, in.readUTF());
+
+      case CodeConstants.CONSTANT_Integer:
+        return new PrimitiveConstant(CodeConstants.CONSTANT_Integer, Integer.valueOf(data.getInt(offset + 1)));
+
+      case CodeConstants.CONSTANT_Float:
+        return new PrimitiveConstant(CodeConstants.CONSTANT_Float, data.getFloat(offset + 1));
+
+      case CodeConstants.CONSTANT_Long:
+        return new PrimitiveConstant(CodeConstants.CONSTANT_Long, data.getLong(offset + 1));
+
+      case CodeConstants.CONSTANT_Double:
+        return new PrimitiveConstant(CodeConstants.CONSTANT_Double, data.getDouble(offset + 1));
+
+      case CodeConstants.CONSTANT_Class:
+      case CodeConstants.CONSTANT_String:
+      case CodeConstants.CONSTANT_MethodType:
+      case CodeConstants.CONSTANT_Module:
+      case CodeConstants.CONSTANT_Package:
+        constant = new PrimitiveConstant(tag, data.getShort(offset + 1) & 0xFFFF);
+        break;
+
+      case CodeConstants.CONSTANT_NameAndType:
+      case CodeConstants.CONSTANT_Fieldref:
+      case CodeConstants.CONSTANT_Methodref:
+      case CodeConstants.CONSTANT_InterfaceMethodref:
+      case CodeConstants.CONSTANT_InvokeDynamic:
+        constant = new LinkConstant(tag, data.getShort(offset + 1) & 0xFFFF, data.getShort(offset + 3) & 0xFFFF);
+        break;
+
+      case CodeConstants.CONSTANT_MethodHandle:
+        constant = new LinkConstant(tag, data.get(offset + 1) & 0xFF, data.getShort(offset + 2) & 0xFFFF);
+        break;
+
+      default:
+        throw new RuntimeException("Invalid Constant Pool entry #" + index + " Type: " + tag);
+    }
+
+    // resolving complex pool elements
+    constant.resolveConstant(this);
+    return constant;
+  }
+
   public String[] getClassElement(int elementType, String className, int nameIndex, int descriptorIndex) {
     String elementName = ((PrimitiveConstant)getConstant(nameIndex)).getString();
     String descriptor = ((PrimitiveConstant)getConstant(descriptorIndex)).getString();
@@ -173,8 +177,28 @@ public class ConstantPool implements NewClassNameBuilder {
     return new String[]{elementName, descriptor};
   }
 
+  public int size() {
+    return offsets.length;
+  }
+
   public PooledConstant getConstant(int index) {
-    return pool.get(index);
+    PooledConstant constant = pool.get(index);
+
+    if (constant == null && offsets[index] >= 0) {
+      try {
+        constant = readConstant(index);
+      }
+      catch (IOException ex) {
+        throw new RuntimeException("Corrupted constant pool entry #" + index, ex);
+      }
+
+      // pools of library classes are shared between threads, make sure they all see the same instance
+      if (!pool.compareAndSet(index, null, constant)) {
+        constant = pool.get(index);
+      }
+    }
+
+    return constant;
   }
 
   public PrimitiveConstant getPrimitiveConstant(int index) {
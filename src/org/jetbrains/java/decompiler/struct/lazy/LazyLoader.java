@@ -3,11 +3,11 @@ package org.jetbrains.java.decompiler.struct.lazy;
 
 import org.jetbrains.java.decompiler.main.extern.IBytecodeProvider;
 import org.jetbrains.java.decompiler.struct.StructMethod;
-import org.jetbrains.java.decompiler.struct.attr.StructGeneralAttribute;
 import org.jetbrains.java.decompiler.struct.consts.ConstantPool;
 import org.jetbrains.java.decompiler.util.DataInputFullStream;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -45,66 +45,14 @@ public class LazyLoader {
     }
   }
 
-  public byte[] loadBytecode(StructMethod mt, int codeFullLength) {
-    String className = mt.getClassStruct().qualifiedName;
-
-    try (DataInputFullStream in = getClassStream(className)) {
-      if (in != null) {
-        in.discard(8);
-
-        ConstantPool pool = mt.getClassStruct().getPool();
-        if (pool == null) {
-          pool = new ConstantPool(in);
-        }
-        else {
-          ConstantPool.skipPool(in);
-        }
-
-        in.discard(6);
-
-        // interfaces
-        in.discard(in.readUnsignedShort() * 2);
-
-        // fields
-        int size = in.readUnsignedShort();
-        for (int i = 0; i < size; i++) {
-          in.discard(6);
-          skipAttributes(in);
-        }
-
-        // methods
-        size = in.readUnsignedShort();
-        for (int i = 0; i < size; i++) {
-          in.discard(2);
-
-          int nameIndex = in.readUnsignedShort();
-          int descriptorIndex = in.readUnsignedShort();
-
-          String[] values = pool.getClassElement(ConstantPool.METHOD, className, nameIndex, descriptorIndex);
-          if (!mt.getName().equals(values[0]) || !mt.getDescriptor().equals(values[1])) {
-            skipAttributes(in);
-            continue;
-          }
-
-          int attrSize = in.readUnsignedShort();
-          for (int j = 0; j < attrSize; j++) {
-            int attrNameIndex = in.readUnsignedShort();
-            String attrName = pool.getPrimitiveConstant(attrNameIndex).getString();
-            if (!StructGeneralAttribute.ATTRIBUTE_CODE.getName().equals(attrName)) {
-              in.discard(in.readInt());
-              continue;
-            }
-
-            in.discard(12);
-
-            return in.read(codeFullLength);
-          }
-
-          break;
-        }
-      }
-
-      return null;
+  /**
+   * Returns a reader over the code of the given method, which starts at {@code codeOffset} in its class file
+   * as recorded while parsing it. The class bytes are not copied.
+   */
+  public DataInputFullStream getCodeStream(StructMethod mt, int codeOffset, int codeFullLength) {
+    try {
+      byte[] bytes = getClassBytes(mt.getClassStruct().qualifiedName);
+      return bytes == null ? null : new DataInputFullStream(ByteBuffer.wrap(bytes, codeOffset, codeFullLength));
     }
     catch (IOException ex) {
       throw new RuntimeException(ex);
@@ -117,8 +65,16 @@ public class LazyLoader {
   }
 
   public DataInputFullStream getClassStream(String qualifiedClassName) throws IOException {
+    byte[] bytes = getClassBytes(qualifiedClassName);
+    return bytes == null ? null : new DataInputFullStream(bytes);
+  }
+
+  /**
+   * @return the bytes of the given class file, or null if the class is unknown; the array must not be modified
+   */
+  public byte[] getClassBytes(String qualifiedClassName) throws IOException {
     Link link = mapClassLinks.get(qualifiedClassName);
-    return link == null ? null : link.data != null ? new DataInputFullStream(link.data) : getClassStream(link.externalPath, link.internalPath);
+    return link == null ? null : link.data != null ? link.data : provider.getBytecode(link.externalPath, link.internalPath);
   }
 
   public static void skipAttributes(DataInputFullStream in) throws IOException {
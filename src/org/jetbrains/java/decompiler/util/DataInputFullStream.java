@@ -1,20 +1,239 @@
 // Copyright 2000-2017 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
 package org.jetbrains.java.decompiler.util;
 
-import java.io.ByteArrayInputStream;
+import java.io.DataInput;
 import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Class file reader over a heap or mapped {@link ByteBuffer}. All reads are absolute reads at the current offset,
+ * so unlike a {@link DataInputStream} over a {@link java.io.ByteArrayInputStream} there is neither locking nor
+ * a virtual stream call per byte, and discarding bytes only moves the offset.
+ */
+public class DataInputFullStream extends InputStream implements DataInput {
+  private final ByteBuffer buffer;
+  private final int start;
+  private final int limit;
+  private int position;
 
-public class DataInputFullStream extends DataInputStream {
   public DataInputFullStream(byte[] bytes) {
-    super(new ByteArrayInputStream(bytes));
+    this(ByteBuffer.wrap(bytes));
+  }
+
+  public DataInputFullStream(ByteBuffer buffer) {
+    this.buffer = buffer.order() == ByteOrder.BIG_ENDIAN ? buffer : buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+    this.start = buffer.position();
+    this.limit = buffer.limit();
+    this.position = start;
+  }
+
+  /**
+   * @return the number of bytes read or discarded so far, i.e. the offset of the next byte relative to where reading started
+   */
+  public int getOffset() {
+    return position - start;
+  }
+
+  /**
+   * @return a view of {@code length} bytes starting at the given offset (as returned by {@link #getOffset()}), sharing the content
+   */
+  public ByteBuffer getBuffer(int offset, int length) {
+    ByteBuffer view = buffer.duplicate();
+    view.limit(start + offset + length).position(start + offset);
+    return view.slice();
   }
 
   public byte[] read(int n) throws IOException {
-    return InterpreterUtil.readBytes(this, n);
+    byte[] bytes = new byte[n];
+    readFully(bytes);
+    return bytes;
   }
 
   public void discard(int n) throws IOException {
-    InterpreterUtil.discardBytes(this, n);
+    advance(n);
+  }
+
+  private int advance(int n) throws EOFException {
+    int pos = position;
+    if (n < 0 || n > limit - pos) {
+      throw new EOFException("premature end of stream");
+    }
+    position = pos + n;
+    return pos;
+  }
+
+  // *****************************************************************************
+  // InputStream
+  // *****************************************************************************
+
+  @Override
+  public int read() {
+    return position < limit ? buffer.get(position++) & 0xFF : -1;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) {
+    if (len == 0) {
+      return 0;
+    }
+    int available = limit - position;
+    if (available <= 0) {
+      return -1;
+    }
+    int n = Math.min(len, available);
+    getBytes(position, b, off, n);
+    position += n;
+    return n;
+  }
+
+  @Override
+  public long skip(long n) {
+    int skipped = (int)Math.max(0, Math.min(n, limit - position));
+    position += skipped;
+    return skipped;
+  }
+
+  @Override
+  public int available() {
+    return limit - position;
+  }
+
+  private void getBytes(int index, byte[] b, int off, int len) {
+    if (buffer.hasArray()) {
+      System.arraycopy(buffer.array(), buffer.arrayOffset() + index, b, off, len);
+    }
+    else {
+      ByteBuffer slice = buffer.duplicate();
+      slice.position(index);
+      try {
+        slice.get(b, off, len);
+      }
+      catch (BufferUnderflowException e) {
+        throw new IndexOutOfBoundsException();
+      }
+    }
+  }
+
+  // *****************************************************************************
+  // DataInput
+  // *****************************************************************************
+
+  @Override
+  public void readFully(byte[] b) throws IOException {
+    readFully(b, 0, b.length);
+  }
+
+  @Override
+  public void readFully(byte[] b, int off, int len) throws IOException {
+    getBytes(advance(len), b, off, len);
+  }
+
+  @Override
+  public int skipBytes(int n) {
+    return (int)skip(n);
+  }
+
+  @Override
+  public boolean readBoolean() throws IOException {
+    return readByte() != 0;
+  }
+
+  @Override
+  public byte readByte() throws IOException {
+    return buffer.get(advance(1));
+  }
+
+  @Override
+  public int readUnsignedByte() throws IOException {
+    return buffer.get(advance(1)) & 0xFF;
+  }
+
+  @Override
+  public short readShort() throws IOException {
+    return buffer.getShort(advance(2));
+  }
+
+  @Override
+  public int readUnsignedShort() throws IOException {
+    return buffer.getShort(advance(2)) & 0xFFFF;
+  }
+
+  @Override
+  public char readChar() throws IOException {
+    return buffer.getChar(advance(2));
+  }
+
+  @Override
+  public int readInt() throws IOException {
+    return buffer.getInt(advance(4));
+  }
+
+  @Override
+  public long readLong() throws IOException {
+    return buffer.getLong(advance(8));
+  }
+
+  @Override
+  public float readFloat() throws IOException {
+    return buffer.getFloat(advance(4));
+  }
+
+  @Override
+  public double readDouble() throws IOException {
+    return buffer.getDouble(advance(8));
+  }
+
+  /**
+   * Reads bytes up to "\n", "\r" or "\r\n" as Latin-1 characters, like the deprecated {@link DataInputStream#readLine()}.
+   */
+  @Override
+  public String readLine() {
+    if (position >= limit) {
+      return null;
+    }
+
+    StringBuilder line = new StringBuilder();
+    while (position < limit) {
+      int c = buffer.get(position++) & 0xFF;
+      if (c == '\n') {
+        break;
+      }
+      if (c == '\r') {
+        if (position < limit && buffer.get(position) == '\n') {
+          position++;
+        }
+        break;
+      }
+      line.append((char)c);
+    }
+    return line.toString();
+  }
+
+  @Override
+  public String readUTF() throws IOException {
+    int length = readUnsignedShort();
+    int pos = advance(length);
+
+    // fast path for plain ASCII, which is nearly every name and descriptor in a class file
+    char[] chars = new char[length];
+    int i = 0;
+    for (; i < length; i++) {
+      int b = buffer.get(pos + i);
+      if (b <= 0) {
+        break;
+      }
+      chars[i] = (char)b;
+    }
+    if (i == length) {
+      return new String(chars);
+    }
+
+    position = pos - 2;
+    return DataInputStream.readUTF(this);
   }
-}
\ No newline at end of file
+}
@@ -6,7 +6,6 @@ import java.io.FileOutputStream;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.Map.Entry;
 
@@ -20,7 +19,6 @@ import org.jetbrains.java.decompiler.modules.decompiler.vars.VarVersionEdge;
 import org.jetbrains.java.decompiler.modules.decompiler.vars.VarVersionNode;
 import org.jetbrains.java.decompiler.modules.decompiler.vars.VarVersionsGraph;
 import org.jetbrains.java.decompiler.struct.StructMethod;
-import org.jetbrains.java.decompiler.util.FastSparseSetFactory.FastSparseSet;
 
 public class DotExporter {
   private static final String DOTS_FOLDER = System.getProperty("DOT_EXPORT_DIR", null);
@@ -129,7 +127,7 @@ public class DotExporter {
     return buffer.toString();
   }
 
-  private static String toDotFormat(DirectGraph graph, Map<String, SFormsFastMapDirect> vars) {
+  private static String toDotFormat(DirectGraph graph, SFormsFastMapDirect[] vars) {
 
     StringBuffer buffer = new StringBuffer();
 
@@ -140,12 +138,12 @@ public class DotExporter {
       DirectNode block = blocks.get(i);
 
       StringBuilder label = new StringBuilder(block.id);
-      if (vars != null && vars.containsKey(block.id)) {
-        SFormsFastMapDirect map = vars.get(block.id);
+      if (vars != null && vars[block.index] != null) {
+        SFormsFastMapDirect map = vars[block.index];
 
-        List<Entry<Integer, FastSparseSet<Integer>>> lst = map.entryList();
+        List<Entry<Integer, FastIntSet>> lst = map.entryList();
         if (lst != null) {
-          for (Entry<Integer, FastSparseSet<Integer>> entry : lst) {
+          for (Entry<Integer, FastIntSet> entry : lst) {
              label.append("\\n").append(entry.getKey());
             Set<Integer> set = entry.getValue().toPlainSet();
             label.append("=").append(set.toString());
@@ -188,7 +186,7 @@ public class DotExporter {
   public static void toDotFile(DirectGraph dgraph, StructMethod mt, String suffix) {
     toDotFile(dgraph, mt, suffix, null);
   }
-  public static void toDotFile(DirectGraph dgraph, StructMethod mt, String suffix, Map<String, SFormsFastMapDirect> vars) {
+  public static void toDotFile(DirectGraph dgraph, StructMethod mt, String suffix, SFormsFastMapDirect[] vars) {
     if (!DUMP_DOTS)
       return;
     try{
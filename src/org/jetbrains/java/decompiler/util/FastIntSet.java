@@ -0,0 +1,234 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package org.jetbrains.java.decompiler.util;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Set of small non-negative ints (the versions of a variable in the SSA forms) kept as a bitset without boxing.
+ *
+ * Copies share their bits until one of them is changed, so {@link #getCopy()} costs no more than the object itself.
+ */
+public class FastIntSet implements Iterable<Integer> {
+  private static final long[] EMPTY = new long[0];
+
+  private long[] data;
+
+  // the bits are shared with a copy and have to be copied before they are changed
+  private boolean shared;
+
+  public FastIntSet() {
+    data = EMPTY;
+  }
+
+  private FastIntSet(long[] data) {
+    this.data = data;
+    this.shared = true;
+  }
+
+  public FastIntSet getCopy() {
+    shared = true;
+    return new FastIntSet(data);
+  }
+
+  private long[] getDataForUpdate(int length) {
+    if (shared || data.length < length) {
+      data = Arrays.copyOf(data, Math.max(data.length, length));
+      shared = false;
+    }
+    return data;
+  }
+
+  public void add(int element) {
+    int block = element >>> 6;
+    long mask = 1L << element;
+    if (block >= data.length || (data[block] & mask) == 0) {
+      getDataForUpdate(block + 1)[block] |= mask;
+    }
+  }
+
+  public void remove(int element) {
+    int block = element >>> 6;
+    long mask = 1L << element;
+    if (block < data.length && (data[block] & mask) != 0) {
+      getDataForUpdate(0)[block] &= ~mask;
+    }
+  }
+
+  public boolean contains(int element) {
+    int block = element >>> 6;
+    return block < data.length && (data[block] & (1L << element)) != 0;
+  }
+
+  public void union(FastIntSet set) {
+    long[] extdata = set.data;
+    long[] intdata = data;
+
+    for (int i = extdata.length - 1; i >= 0; i--) {
+      long added = i < intdata.length ? extdata[i] & ~intdata[i] : extdata[i];
+      if (added != 0) {
+        if (shared || i >= intdata.length) {
+          intdata = getDataForUpdate(i + 1);
+        }
+        intdata[i] |= added;
+      }
+    }
+  }
+
+  public void intersection(FastIntSet set) {
+    long[] extdata = set.data;
+    long[] intdata = data;
+
+    for (int i = intdata.length - 1; i >= 0; i--) {
+      long removed = i < extdata.length ? intdata[i] & ~extdata[i] : intdata[i];
+      if (removed != 0) {
+        intdata = getDataForUpdate(0);
+        intdata[i] &= ~removed;
+      }
+    }
+  }
+
+  public void complement(FastIntSet set) {
+    long[] extdata = set.data;
+    long[] intdata = data;
+
+    for (int i = Math.min(intdata.length, extdata.length) - 1; i >= 0; i--) {
+      long removed = intdata[i] & extdata[i];
+      if (removed != 0) {
+        intdata = getDataForUpdate(0);
+        intdata[i] &= ~removed;
+      }
+    }
+  }
+
+  public boolean isEmpty() {
+    for (long block : data) {
+      if (block != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return 0 for an empty set, 1 for a single element and 2 for more
+   */
+  public int getCardinality() {
+    int count = 0;
+    for (long block : data) {
+      if (block != 0) {
+        count += (block & (block - 1)) == 0 ? 1 : 2;
+        if (count > 1) {
+          return 2;
+        }
+      }
+    }
+    return count;
+  }
+
+  /**
+   * @return the smallest element not less than {@code from}, or -1 if there is none
+   */
+  public int nextElement(int from) {
+    long[] intdata = data;
+    int block = from >>> 6;
+    if (block >= intdata.length) {
+      return -1;
+    }
+
+    long word = intdata[block] & (-1L << from);
+    while (word == 0) {
+      if (++block == intdata.length) {
+        return -1;
+      }
+      word = intdata[block];
+    }
+    return (block << 6) + Long.numberOfTrailingZeros(word);
+  }
+
+  @Override
+  public Iterator<Integer> iterator() {
+    return new Iterator<Integer>() {
+      private int next = nextElement(0);
+      private int last = -1;
+
+      @Override
+      public boolean hasNext() {
+        return next >= 0;
+      }
+
+      @Override
+      public Integer next() {
+        if (next < 0) {
+          throw new NoSuchElementException();
+        }
+        last = next;
+        next = nextElement(next + 1);
+        return last;
+      }
+
+      @Override
+      public void remove() {
+        if (last < 0) {
+          throw new IllegalStateException();
+        }
+        FastIntSet.this.remove(last);
+        last = -1;
+      }
+    };
+  }
+
+  public Set<Integer> toPlainSet() {
+    Set<Integer> set = new HashSet<>();
+    for (int element = nextElement(0); element >= 0; element = nextElement(element + 1)) {
+      set.add(element);
+    }
+    return set;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (o == this) return true;
+    if (!(o instanceof FastIntSet)) return false;
+
+    long[] longdata = ((FastIntSet)o).data;
+    long[] shortdata = data;
+    if (shortdata == longdata) return true;
+
+    if (shortdata.length > longdata.length) {
+      shortdata = longdata;
+      longdata = data;
+    }
+
+    for (int i = shortdata.length - 1; i >= 0; i--) {
+      if (shortdata[i] != longdata[i]) {
+        return false;
+      }
+    }
+
+    for (int i = longdata.length - 1; i >= shortdata.length; i--) {
+      if (longdata[i] != 0) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    long hash = 0;
+    for (int i = data.length - 1; i >= 0; i--) {
+      hash = hash * 31 + data[i];
+    }
+    return (int)(hash ^ (hash >>> 32));
+  }
+
+  @Override
+  public String toString() {
+    return toPlainSet().toString();
+  }
+}
@@ -2,21 +2,35 @@
 package org.jetbrains.java.decompiler.util;
 
 import org.jetbrains.java.decompiler.modules.decompiler.exps.VarExprent;
-import org.jetbrains.java.decompiler.util.FastSparseSetFactory.FastSparseSet;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.Set;
 
+/**
+ * Versions of the variables at a point of the SSA forms, by variable index.
+ *
+ * Copies are made lazily: a map made by {@link #getCopy()} shares the arrays and the sets of the original until one of the two
+ * changes them or hands out a set, and a map made by {@link #SFormsFastMapDirect(SFormsFastMapDirect)} shares the arrays until one
+ * of the two changes them. So copying a map costs no more than the object itself, and only the maps which change allocate.
+ * A set taken from a map before {@link #getCopy()} is still shared with the copy and must not be changed afterwards.
+ */
 public class SFormsFastMapDirect {
+  private static final FastIntSet[] EMPTY_ARRAY = new FastIntSet[0];
 
   private int size;
 
-  @SuppressWarnings("unchecked") private final FastSparseSet<Integer>[][] elements = new FastSparseSet[3][];
+  private final FastIntSet[][] elements = new FastIntSet[3][];
 
   private final int[][] next = new int[3][];
 
+  // the arrays are shared with another map and have to be copied before they are changed
+  private boolean arraysShared;
+
+  // the sets are shared with a copy made by getCopy() and have to be copied before they are changed or handed out
+  private boolean setsShared;
+
   public SFormsFastMapDirect() {
     this(true);
   }
@@ -24,73 +38,88 @@ public class SFormsFastMapDirect {
   private SFormsFastMapDirect(boolean initialize) {
     if (initialize) {
       for (int i = 2; i >= 0; i--) {
-        @SuppressWarnings("unchecked") FastSparseSet<Integer>[] empty = FastSparseSet.EMPTY_ARRAY;
-        elements[i] = empty;
+        elements[i] = EMPTY_ARRAY;
         next[i] = InterpreterUtil.EMPTY_INT_ARRAY;
       }
     }
   }
 
+  /**
+   * Creates a map sharing the sets of the given one, a change to a set through one of the maps is seen by the other.
+   */
   public SFormsFastMapDirect(SFormsFastMapDirect map) {
+    map.ensureOwnSets();
+
     for (int i = 2; i >= 0; i--) {
-      FastSparseSet<Integer>[] arr = map.elements[i];
-      int[] arrnext = map.next[i];
+      elements[i] = map.elements[i];
+      next[i] = map.next[i];
+    }
+    size = map.size;
 
-      int length = arr.length;
-      @SuppressWarnings("unchecked") FastSparseSet<Integer>[] arrnew = new FastSparseSet[length];
-      int[] arrnextnew = new int[length];
+    arraysShared = map.arraysShared = true;
+  }
 
-      System.arraycopy(arr, 0, arrnew, 0, length);
-      System.arraycopy(arrnext, 0, arrnextnew, 0, length);
+  public SFormsFastMapDirect getCopy() {
 
-      elements[i] = arrnew;
-      next[i] = arrnextnew;
+    SFormsFastMapDirect map = new SFormsFastMapDirect(false);
 
-      size = map.size;
+    for (int i = 2; i >= 0; i--) {
+      map.elements[i] = elements[i];
+      map.next[i] = next[i];
     }
+    map.size = size;
+
+    arraysShared = setsShared = true;
+    map.arraysShared = map.setsShared = true;
+
+    return map;
   }
 
-  public SFormsFastMapDirect getCopy() {
+  private void ensureOwnArrays() {
+    if (arraysShared) {
+      copyArrays(false);
+    }
+  }
 
-    SFormsFastMapDirect map = new SFormsFastMapDirect(false);
-    map.size = size;
+  private void ensureOwnSets() {
+    if (setsShared) {
+      copyArrays(true);
+    }
+  }
 
-    FastSparseSet[][] mapelements = map.elements;
-    int[][] mapnext = map.next;
+  private void copyArrays(boolean copySets) {
 
     for (int i = 2; i >= 0; i--) {
-      FastSparseSet<Integer>[] arr = elements[i];
+      FastIntSet[] arr = elements[i];
       int length = arr.length;
 
       if (length > 0) {
-        int[] arrnext = next[i];
-
-        @SuppressWarnings("unchecked") FastSparseSet<Integer>[] arrnew = new FastSparseSet[length];
+        FastIntSet[] arrnew = new FastIntSet[length];
         int[] arrnextnew = new int[length];
 
-        System.arraycopy(arrnext, 0, arrnextnew, 0, length);
+        System.arraycopy(next[i], 0, arrnextnew, 0, length);
 
-        mapelements[i] = arrnew;
-        mapnext[i] = arrnextnew;
-
-        int pointer = 0;
-        do {
-          FastSparseSet<Integer> set = arr[pointer];
-          if (set != null) {
-            arrnew[pointer] = set.getCopy();
+        if (copySets) {
+          for (int j = length - 1; j >= 0; j--) {
+            FastIntSet set = arr[j];
+            if (set != null) {
+              arrnew[j] = set.getCopy();
+            }
           }
-
-          pointer = arrnext[pointer];
         }
-        while (pointer != 0);
-      }
-      else {
-        mapelements[i] = FastSparseSet.EMPTY_ARRAY;
-        mapnext[i] = InterpreterUtil.EMPTY_INT_ARRAY;
+        else {
+          System.arraycopy(arr, 0, arrnew, 0, length);
+        }
+
+        elements[i] = arrnew;
+        next[i] = arrnextnew;
       }
     }
 
-    return map;
+    arraysShared = false;
+    if (copySets) {
+      setsShared = false;
+    }
   }
 
   public int size() {
@@ -101,16 +130,18 @@ public class SFormsFastMapDirect {
     return size == 0;
   }
 
-  public void put(int key, FastSparseSet<Integer> value) {
+  public void put(int key, FastIntSet value) {
     putInternal(key, value, false);
   }
 
   public void removeAllFields() {
-    FastSparseSet<Integer>[] arr = elements[2];
+    ensureOwnArrays();
+
+    FastIntSet[] arr = elements[2];
     int[] arrnext = next[2];
 
     for (int i = arr.length - 1; i >= 0; i--) {
-      FastSparseSet<Integer> val = arr[i];
+      FastIntSet val = arr[i];
       if (val != null) {
         arr[i] = null;
         size--;
@@ -119,7 +150,7 @@ public class SFormsFastMapDirect {
     }
   }
 
-  public void putInternal(final int key, final FastSparseSet<Integer> value, boolean remove) {
+  public void putInternal(final int key, final FastIntSet value, boolean remove) {
 
     int index = 0;
     int ikey = key;
@@ -132,7 +163,9 @@ public class SFormsFastMapDirect {
       ikey -= VarExprent.STACK_BASE;
     }
 
-    FastSparseSet<Integer>[] arr = elements[index];
+    ensureOwnArrays();
+
+    FastIntSet[] arr = elements[index];
     if (ikey >= arr.length) {
       if (remove) {
         return;
@@ -142,7 +175,7 @@ public class SFormsFastMapDirect {
       }
     }
 
-    FastSparseSet<Integer> oldval = arr[ikey];
+    FastIntSet oldval = arr[ikey];
     arr[ikey] = value;
 
     int[] arrnext = next[index];
@@ -169,10 +202,15 @@ public class SFormsFastMapDirect {
   }
 
   public boolean containsKey(int key) {
-    return get(key) != null;
+    return getInternal(key) != null;
+  }
+
+  public FastIntSet get(int key) {
+    ensureOwnSets();
+    return getInternal(key);
   }
 
-  public FastSparseSet<Integer> get(int key) {
+  private FastIntSet getInternal(int key) {
 
     int index = 0;
     if (key < 0) {
@@ -184,7 +222,7 @@ public class SFormsFastMapDirect {
       key -= VarExprent.STACK_BASE;
     }
 
-    FastSparseSet<Integer>[] arr = elements[index];
+    FastIntSet[] arr = elements[index];
 
     if (key < arr.length) {
       return arr[key];
@@ -193,26 +231,28 @@ public class SFormsFastMapDirect {
   }
 
   public void complement(SFormsFastMapDirect map) {
+    ensureOwnSets();
+    ensureOwnArrays();
 
     for (int i = 2; i >= 0; i--) {
-      FastSparseSet<Integer>[] lstOwn = elements[i];
+      FastIntSet[] lstOwn = elements[i];
 
       if (lstOwn.length == 0) {
         continue;
       }
 
-      FastSparseSet<Integer>[] lstExtern = map.elements[i];
+      FastIntSet[] lstExtern = map.elements[i];
       int[] arrnext = next[i];
 
       int pointer = 0;
       do {
-        FastSparseSet<Integer> first = lstOwn[pointer];
+        FastIntSet first = lstOwn[pointer];
 
         if (first != null) {
           if (pointer >= lstExtern.length) {
             break;
           }
-          FastSparseSet<Integer> second = lstExtern[pointer];
+          FastIntSet second = lstExtern[pointer];
 
           if (second != null) {
             first.complement(second);
@@ -231,23 +271,25 @@ public class SFormsFastMapDirect {
   }
 
   public void intersection(SFormsFastMapDirect map) {
+    ensureOwnSets();
+    ensureOwnArrays();
 
     for (int i = 2; i >= 0; i--) {
-      FastSparseSet<Integer>[] lstOwn = elements[i];
+      FastIntSet[] lstOwn = elements[i];
 
       if (lstOwn.length == 0) {
         continue;
       }
 
-      FastSparseSet<Integer>[] lstExtern = map.elements[i];
+      FastIntSet[] lstExtern = map.elements[i];
       int[] arrnext = next[i];
 
       int pointer = 0;
       do {
-        FastSparseSet<Integer> first = lstOwn[pointer];
+        FastIntSet first = lstOwn[pointer];
 
         if (first != null) {
-          FastSparseSet<Integer> second = null;
+          FastIntSet second = null;
           if (pointer < lstExtern.length) {
             second = lstExtern[pointer];
           }
@@ -270,15 +312,17 @@ public class SFormsFastMapDirect {
   }
 
   public void union(SFormsFastMapDirect map) {
+    ensureOwnSets();
+    ensureOwnArrays();
 
     for (int i = 2; i >= 0; i--) {
-      FastSparseSet<Integer>[] lstExtern = map.elements[i];
+      FastIntSet[] lstExtern = map.elements[i];
 
       if (lstExtern.length == 0) {
         continue;
       }
 
-      FastSparseSet<Integer>[] lstOwn = elements[i];
+      FastIntSet[] lstOwn = elements[i];
       int[] arrnext = next[i];
       int[] arrnextExtern = map.next[i];
 
@@ -289,10 +333,10 @@ public class SFormsFastMapDirect {
           arrnext = next[i];
         }
 
-        FastSparseSet<Integer> second = lstExtern[pointer];
+        FastIntSet second = lstExtern[pointer];
 
         if (second != null) {
-          FastSparseSet<Integer> first = lstOwn[pointer];
+          FastIntSet first = lstOwn[pointer];
 
           if (first == null) {
             lstOwn[pointer] = second.getCopy();
@@ -310,14 +354,56 @@ public class SFormsFastMapDirect {
     }
   }
 
+  @Override
+  public boolean equals(Object o) {
+    if (o == this) return true;
+    if (!(o instanceof SFormsFastMapDirect)) return false;
+
+    SFormsFastMapDirect map = (SFormsFastMapDirect)o;
+    if (size != map.size) {
+      return false;
+    }
+
+    for (int i = 2; i >= 0; i--) {
+      FastIntSet[] arr = elements[i];
+      FastIntSet[] arrExtern = map.elements[i];
+      if (arr == arrExtern) {
+        continue;
+      }
+
+      for (int j = Math.max(arr.length, arrExtern.length) - 1; j >= 0; j--) {
+        FastIntSet first = j < arr.length ? arr[j] : null;
+        FastIntSet second = j < arrExtern.length ? arrExtern[j] : null;
+        if (!InterpreterUtil.equalObjects(first, second)) {
+          return false;
+        }
+      }
+    }
+
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int hash = size;
+    for (int i = 2; i >= 0; i--) {
+      for (FastIntSet set : elements[i]) {
+        if (set != null) {
+          hash = hash * 31 + set.hashCode();
+        }
+      }
+    }
+    return hash;
+  }
+
   public String toString() {
 
     StringBuilder buffer = new StringBuilder("{");
 
-    List<Entry<Integer, FastSparseSet<Integer>>> lst = entryList();
+    List<Entry<Integer, FastIntSet>> lst = entryList();
     if (lst != null) {
       boolean first = true;
-      for (Entry<Integer, FastSparseSet<Integer>> entry : lst) {
+      for (Entry<Integer, FastIntSet> entry : lst) {
         if (!first) {
           buffer.append(", ");
         }
@@ -334,19 +420,21 @@ public class SFormsFastMapDirect {
     return buffer.toString();
   }
 
-  public List<Entry<Integer, FastSparseSet<Integer>>> entryList() {
-    List<Entry<Integer, FastSparseSet<Integer>>> list = new ArrayList<>();
+  public List<Entry<Integer, FastIntSet>> entryList() {
+    ensureOwnSets();
+
+    List<Entry<Integer, FastIntSet>> list = new ArrayList<>();
 
     for (int i = 2; i >= 0; i--) {
       int ikey = 0;
-      for (final FastSparseSet<Integer> ent : elements[i]) {
+      for (final FastIntSet ent : elements[i]) {
         if (ent != null) {
           final int key = i == 0 ? ikey : (i == 1 ? ikey + VarExprent.STACK_BASE : -ikey);
 
-          list.add(new Entry<Integer, FastSparseSet<Integer>>() {
+          list.add(new Entry<Integer, FastIntSet>() {
 
             private final Integer var = key;
-            private final FastSparseSet<Integer> val = ent;
+            private final FastIntSet val = ent;
 
             @Override
             public Integer getKey() {
@@ -354,12 +442,12 @@ public class SFormsFastMapDirect {
             }
 
             @Override
-            public FastSparseSet<Integer> getValue() {
+            public FastIntSet getValue() {
               return val;
             }
 
             @Override
-            public FastSparseSet<Integer> setValue(FastSparseSet<Integer> newvalue) {
+            public FastIntSet setValue(FastIntSet newvalue) {
               return null;
             }
           });
@@ -372,9 +460,9 @@ public class SFormsFastMapDirect {
     return list;
   }
 
-  private FastSparseSet<Integer>[] ensureCapacity(int index, int size, boolean exact) {
+  private FastIntSet[] ensureCapacity(int index, int size, boolean exact) {
 
-    FastSparseSet<Integer>[] arr = elements[index];
+    FastIntSet[] arr = elements[index];
     int[] arrnext = next[index];
 
     int minsize = size;
@@ -385,7 +473,7 @@ public class SFormsFastMapDirect {
       }
     }
 
-    @SuppressWarnings("unchecked") FastSparseSet<Integer>[] arrnew = new FastSparseSet[minsize];
+    FastIntSet[] arrnew = new FastIntSet[minsize];
     System.arraycopy(arr, 0, arrnew, 0, arr.length);
 
     int[] arrnextnew = new int[minsize];
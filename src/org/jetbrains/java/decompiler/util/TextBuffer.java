@@ -6,6 +6,8 @@ package org.jetbrains.java.decompiler.util;
 import org.jetbrains.java.decompiler.main.DecompilerContext;
 import org.jetbrains.java.decompiler.main.extern.IFernflowerPreferences;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.*;
 
 /**
@@ -123,6 +125,23 @@ public class TextBuffer {
     }
   }
 
+  /**
+   * Writes the same text as {@link #toString()}, without copying it first when no lines have to be moved or annotated.
+   */
+  public void writeTo(Writer out) throws IOException {
+    if ((myLineToOffsetMapping != null && !myLineToOffsetMapping.isEmpty()) || myLineMapping != null) {
+      out.write(toString());
+      return;
+    }
+
+    char[] chunk = new char[8192];
+    for (int start = 0; start < myStringBuilder.length(); start += chunk.length) {
+      int end = Math.min(start + chunk.length, myStringBuilder.length());
+      myStringBuilder.getChars(start, end, chunk, 0);
+      out.write(chunk, 0, end - start);
+    }
+  }
+
   private String addOriginalLineNumbers() {
     StringBuilder sb = new StringBuilder();
     int lineStart = 0, lineEnd;
@@ -0,0 +1,204 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package org.jetbrains.java.decompiler.util;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads the central directory of a zip archive and hands out the still compressed data of its entries,
+ * so that they can be copied into another archive by {@link ZipArchiveWriter#writeRawEntry} without inflating and deflating them.
+ *
+ * Reads are positional, so one reader can be shared between threads.
+ */
+public class ZipArchiveReader implements Closeable {
+  static final int LOCAL_HEADER = 0x04034b50;
+  static final int CENTRAL_HEADER = 0x02014b50;
+  static final int END_HEADER = 0x06054b50;
+  static final int ZIP64_END_HEADER = 0x06064b50;
+  static final int ZIP64_LOCATOR = 0x07064b50;
+  static final int ZIP64_EXTRA = 0x0001;
+
+  private static final int END_SIZE = 22;
+  private static final int ZIP64_LOCATOR_SIZE = 20;
+  private static final int MAX_COMMENT = 0xFFFF;
+
+  private final File file;
+  private final FileChannel channel;
+  private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+  public ZipArchiveReader(File file) throws IOException {
+    this.file = file;
+    this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    try {
+      readCentralDirectory();
+    }
+    catch (IOException | RuntimeException ex) {
+      channel.close();
+      throw ex;
+    }
+  }
+
+  public static class Entry {
+    public final String name;
+    public final int flags;
+    public final int method;
+    public final int dosTime;
+    public final int crc;
+    public final long compressedSize;
+    public final long size;
+    private final long localHeaderOffset;
+
+    Entry(String name, int flags, int method, int dosTime, int crc, long compressedSize, long size, long localHeaderOffset) {
+      this.name = name;
+      this.flags = flags;
+      this.method = method;
+      this.dosTime = dosTime;
+      this.crc = crc;
+      this.compressedSize = compressedSize;
+      this.size = size;
+      this.localHeaderOffset = localHeaderOffset;
+    }
+
+    public boolean isDirectory() {
+      return name.endsWith("/");
+    }
+  }
+
+  public Entry getEntry(String name) {
+    return entries.get(name);
+  }
+
+  public Collection<Entry> getEntries() {
+    return Collections.unmodifiableCollection(entries.values());
+  }
+
+  /**
+   * @return the data of the given entry as stored in the archive, i.e. compressed with {@link Entry#method}
+   */
+  public byte[] readRawData(Entry entry) throws IOException {
+    ByteBuffer header = read(entry.localHeaderOffset, 30);
+    if (header.getInt(0) != LOCAL_HEADER) {
+      throw new IOException("Invalid local header of " + entry.name + " in " + file);
+    }
+    long dataOffset = entry.localHeaderOffset + 30 + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+
+    if (entry.compressedSize > Integer.MAX_VALUE) {
+      throw new IOException("Entry " + entry.name + " in " + file + " is too large");
+    }
+    return read(dataOffset, (int)entry.compressedSize).array();
+  }
+
+  private void readCentralDirectory() throws IOException {
+    long fileSize = channel.size();
+    int tailSize = (int)Math.min(fileSize, END_SIZE + MAX_COMMENT);
+    long tailOffset = fileSize - tailSize;
+    ByteBuffer tail = read(tailOffset, tailSize);
+
+    int end = -1;
+    for (int i = tailSize - END_SIZE; i >= 0; i--) {
+      if (tail.getInt(i) == END_HEADER) {
+        end = i;
+        break;
+      }
+    }
+    if (end < 0) {
+      throw new IOException("Not a zip archive: " + file);
+    }
+
+    long count = tail.getShort(end + 10) & 0xFFFF;
+    long directorySize = tail.getInt(end + 12) & 0xFFFFFFFFL;
+    long directoryOffset = tail.getInt(end + 16) & 0xFFFFFFFFL;
+
+    if ((count == 0xFFFF || directorySize == 0xFFFFFFFFL || directoryOffset == 0xFFFFFFFFL) && end >= ZIP64_LOCATOR_SIZE &&
+        tail.getInt(end - ZIP64_LOCATOR_SIZE) == ZIP64_LOCATOR) {
+      ByteBuffer zip64End = read(tail.getLong(end - ZIP64_LOCATOR_SIZE + 8), 56);
+      if (zip64End.getInt(0) != ZIP64_END_HEADER) {
+        throw new IOException("Invalid zip64 end record in " + file);
+      }
+      count = zip64End.getLong(32);
+      directorySize = zip64End.getLong(40);
+      directoryOffset = zip64End.getLong(48);
+    }
+
+    if (directorySize > Integer.MAX_VALUE) {
+      throw new IOException("Central directory of " + file + " is too large");
+    }
+    ByteBuffer directory = read(directoryOffset, (int)directorySize);
+
+    int pos = 0;
+    for (long i = 0; i < count; i++) {
+      if (directory.getInt(pos) != CENTRAL_HEADER) {
+        throw new IOException("Invalid central directory of " + file);
+      }
+
+      int flags = directory.getShort(pos + 8) & 0xFFFF;
+      int method = directory.getShort(pos + 10) & 0xFFFF;
+      int dosTime = directory.getInt(pos + 12);
+      int crc = directory.getInt(pos + 16);
+      long compressedSize = directory.getInt(pos + 20) & 0xFFFFFFFFL;
+      long size = directory.getInt(pos + 24) & 0xFFFFFFFFL;
+      int nameLength = directory.getShort(pos + 28) & 0xFFFF;
+      int extraLength = directory.getShort(pos + 30) & 0xFFFF;
+      int commentLength = directory.getShort(pos + 32) & 0xFFFF;
+      long localHeaderOffset = directory.getInt(pos + 42) & 0xFFFFFFFFL;
+
+      byte[] name = new byte[nameLength];
+      ((ByteBuffer)directory.duplicate().position(pos + 46)).get(name);
+
+      // sizes and offset which don't fit into 32 bits are in the zip64 extra field, in this order
+      int extra = pos + 46 + nameLength;
+      int extraEnd = extra + extraLength;
+      while (extra + 4 <= extraEnd) {
+        int id = directory.getShort(extra) & 0xFFFF;
+        int length = directory.getShort(extra + 2) & 0xFFFF;
+        if (id == ZIP64_EXTRA) {
+          int field = extra + 4;
+          if (size == 0xFFFFFFFFL) {
+            size = directory.getLong(field);
+            field += 8;
+          }
+          if (compressedSize == 0xFFFFFFFFL) {
+            compressedSize = directory.getLong(field);
+            field += 8;
+          }
+          if (localHeaderOffset == 0xFFFFFFFFL) {
+            localHeaderOffset = directory.getLong(field);
+          }
+        }
+        extra += 4 + length;
+      }
+
+      String entryName = new String(name, StandardCharsets.UTF_8);
+      entries.put(entryName, new Entry(entryName, flags, method, dosTime, crc, compressedSize, size, localHeaderOffset));
+
+      pos = extraEnd + commentLength;
+    }
+  }
+
+  private ByteBuffer read(long offset, int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, offset + buffer.position()) < 0) {
+        throw new EOFException("Unexpected end of " + file);
+      }
+    }
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    return buffer;
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+}
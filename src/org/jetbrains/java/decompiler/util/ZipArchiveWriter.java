@@ -0,0 +1,334 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package org.jetbrains.java.decompiler.util;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Calendar;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
+
+/**
+ * Zip archive writer which, unlike {@link java.util.zip.ZipOutputStream}, can also append entries whose data is already compressed,
+ * such as entries of another archive read with {@link ZipArchiveReader}. Every entry is complete when it is written, so sizes and CRC
+ * are always in the local header and no data descriptors are used.
+ *
+ * Not thread-safe, but entries can be compressed on other threads with {@link #compress} and then appended with {@link #writeCompressedEntry}.
+ */
+public class ZipArchiveWriter implements Closeable {
+  private static final int VERSION_STORED = 10;
+  private static final int VERSION_DEFLATED = 20;
+  private static final int VERSION_ZIP64 = 45;
+  private static final int FLAG_DATA_DESCRIPTOR = 0x8;
+  private static final int FLAG_UTF8 = 0x800;
+  private static final byte[] EMPTY = new byte[0];
+
+  private final OutputStream out;
+  private final ByteArrayOutputStream directory = new ByteArrayOutputStream();
+  private final int level;
+  private final Deflater deflater;
+  private final int dosTime = toDosTime(System.currentTimeMillis());
+  private long offset;
+  private long count;
+
+  public ZipArchiveWriter(File file) throws IOException {
+    this(file, Deflater.DEFAULT_COMPRESSION);
+  }
+
+  /**
+   * @param level the compression level of entries written by {@link #writeEntry}, from {@link Deflater#DEFAULT_COMPRESSION} to
+   *              {@link Deflater#BEST_COMPRESSION}; {@link Deflater#NO_COMPRESSION} writes them uncompressed
+   */
+  public ZipArchiveWriter(File file, int level) throws IOException {
+    this(new FileOutputStream(file), level);
+  }
+
+  public ZipArchiveWriter(OutputStream out, int level) {
+    checkLevel(level);
+    this.out = new BufferedOutputStream(out, 64 * 1024);
+    this.level = level;
+    this.deflater = level == Deflater.NO_COMPRESSION ? null : new Deflater(level, true);
+  }
+
+  public int getLevel() {
+    return level;
+  }
+
+  /**
+   * An entry compressed by {@link #compress}, ready to be appended by {@link #writeCompressedEntry}.
+   */
+  public static class CompressedEntry {
+    private final String name;
+    private final int method;
+    private final int crc;
+    private final byte[] data;
+    private final long size;
+
+    private CompressedEntry(String name, int method, int crc, byte[] data, long size) {
+      this.name = name;
+      this.method = method;
+      this.crc = crc;
+      this.data = data;
+      this.size = size;
+    }
+  }
+
+  /**
+   * Compresses an entry with the given level. Unlike the writing methods this can be called on any thread.
+   */
+  public static CompressedEntry compress(String name, byte[] data, int level) {
+    checkLevel(level);
+    if (level == Deflater.NO_COMPRESSION) {
+      return compress(name, data, null);
+    }
+
+    Deflater deflater = new Deflater(level, true);
+    try {
+      return compress(name, data, deflater);
+    }
+    finally {
+      deflater.end();
+    }
+  }
+
+  private static CompressedEntry compress(String name, byte[] data, Deflater deflater) {
+    CRC32 crc = new CRC32();
+    crc.update(data);
+
+    if (deflater == null) {
+      return new CompressedEntry(name, ZipEntry.STORED, (int)crc.getValue(), data, data.length);
+    }
+
+    deflater.reset();
+    deflater.setInput(data);
+    deflater.finish();
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, data.length / 2));
+    byte[] buffer = new byte[8192];
+    while (!deflater.finished()) {
+      int length = deflater.deflate(buffer);
+      compressed.write(buffer, 0, length);
+    }
+
+    return new CompressedEntry(name, ZipEntry.DEFLATED, (int)crc.getValue(), compressed.toByteArray(), data.length);
+  }
+
+  public interface EntryConsumer {
+    void accept(CompressedEntry entry) throws IOException;
+  }
+
+  /**
+   * Returns a writer for the UTF-8 text of an entry which compresses it while it is written, so that the uncompressed text never has to be
+   * held in memory. Like {@link #compress} it can be used on any thread. When the writer is closed, the entry is passed to the given consumer.
+   */
+  public static Writer compressingWriter(String name, int level, EntryConsumer consumer) {
+    checkLevel(level);
+    EntryOutputStream stream = new EntryOutputStream(name, level == Deflater.NO_COMPRESSION ? null : new Deflater(level, true));
+    return new OutputStreamWriter(stream, StandardCharsets.UTF_8) {
+      private boolean closed;
+
+      @Override
+      public void close() throws IOException {
+        if (!closed) {
+          closed = true;
+          super.close();
+          consumer.accept(stream.entry);
+        }
+      }
+    };
+  }
+
+  private static class EntryOutputStream extends FilterOutputStream {
+    private final String name;
+    private final Deflater deflater;
+    private final ByteArrayOutputStream bytes;
+    private final CRC32 crc = new CRC32();
+    private long size;
+    private CompressedEntry entry;
+
+    private EntryOutputStream(String name, Deflater deflater) {
+      this(name, deflater, new ByteArrayOutputStream(8192));
+    }
+
+    private EntryOutputStream(String name, Deflater deflater, ByteArrayOutputStream bytes) {
+      super(deflater == null ? bytes : new DeflaterOutputStream(bytes, deflater, 8192));
+      this.name = name;
+      this.deflater = deflater;
+      this.bytes = bytes;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      crc.update(b);
+      size++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      crc.update(b, off, len);
+      size += len;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (entry == null) {
+        try {
+          out.close();
+        }
+        finally {
+          if (deflater != null) {
+            deflater.end();
+          }
+        }
+        entry = new CompressedEntry(name, deflater == null ? ZipEntry.STORED : ZipEntry.DEFLATED, (int)crc.getValue(), bytes.toByteArray(), size);
+      }
+    }
+  }
+
+  private static void checkLevel(int level) {
+    if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+      throw new IllegalArgumentException("Invalid compression level: " + level);
+    }
+  }
+
+  public void writeManifest(Manifest manifest) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    manifest.write(bytes);
+    writeEntry(JarFile.MANIFEST_NAME, bytes.toByteArray());
+  }
+
+  public void writeDirectory(String name) throws IOException {
+    writeEntry(name, FLAG_UTF8, ZipEntry.STORED, dosTime, 0, EMPTY, 0);
+  }
+
+  public void writeEntry(String name, byte[] data) throws IOException {
+    writeCompressedEntry(compress(name, data, deflater));
+  }
+
+  public void writeCompressedEntry(CompressedEntry entry) throws IOException {
+    writeEntry(entry.name, FLAG_UTF8, entry.method, dosTime, entry.crc, entry.data, entry.size);
+  }
+
+  /**
+   * Appends an entry of another archive, keeping its compression method, time, CRC and sizes.
+   *
+   * @param data the entry data as returned by {@link ZipArchiveReader#readRawData}
+   */
+  public void writeRawEntry(ZipArchiveReader.Entry entry, byte[] data) throws IOException {
+    writeEntry(entry.name, (entry.flags & ~FLAG_DATA_DESCRIPTOR) | FLAG_UTF8, entry.method, entry.dosTime, entry.crc, data, entry.size);
+  }
+
+  private void writeEntry(String name, int flags, int method, int time, int crc, byte[] data, long size) throws IOException {
+    if (offset >= 0xFFFFFFFFL || size >= 0xFFFFFFFFL) {
+      throw new IOException("Entry " + name + " doesn't fit into a zip archive without zip64 entries");
+    }
+
+    byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+    int version = method == ZipEntry.STORED ? VERSION_STORED : VERSION_DEFLATED;
+
+    ByteBuffer header = ByteBuffer.allocate(30 + nameBytes.length).order(ByteOrder.LITTLE_ENDIAN);
+    header.putInt(ZipArchiveReader.LOCAL_HEADER)
+      .putShort((short)version)
+      .putShort((short)flags)
+      .putShort((short)method)
+      .putInt(time)
+      .putInt(crc)
+      .putInt(data.length)
+      .putInt((int)size)
+      .putShort((short)nameBytes.length)
+      .putShort((short)0)
+      .put(nameBytes);
+    out.write(header.array());
+    out.write(data);
+
+    ByteBuffer central = ByteBuffer.allocate(46 + nameBytes.length).order(ByteOrder.LITTLE_ENDIAN);
+    central.putInt(ZipArchiveReader.CENTRAL_HEADER)
+      .putShort((short)VERSION_DEFLATED)
+      .putShort((short)version)
+      .putShort((short)flags)
+      .putShort((short)method)
+      .putInt(time)
+      .putInt(crc)
+      .putInt(data.length)
+      .putInt((int)size)
+      .putShort((short)nameBytes.length)
+      .putShort((short)0)  // extra
+      .putShort((short)0)  // comment
+      .putShort((short)0)  // disk
+      .putShort((short)0)  // internal attributes
+      .putInt(0)           // external attributes
+      .putInt((int)offset)
+      .put(nameBytes);
+    directory.write(central.array());
+
+    offset += header.capacity() + data.length;
+    count++;
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      long directoryOffset = offset;
+      long directorySize = directory.size();
+      directory.writeTo(out);
+      offset += directorySize;
+
+      if (count >= 0xFFFF || directoryOffset >= 0xFFFFFFFFL) {
+        ByteBuffer zip64End = ByteBuffer.allocate(56 + 20).order(ByteOrder.LITTLE_ENDIAN);
+        zip64End.putInt(ZipArchiveReader.ZIP64_END_HEADER)
+          .putLong(44)
+          .putShort((short)VERSION_ZIP64)
+          .putShort((short)VERSION_ZIP64)
+          .putInt(0)
+          .putInt(0)
+          .putLong(count)
+          .putLong(count)
+          .putLong(directorySize)
+          .putLong(directoryOffset);
+        zip64End.putInt(ZipArchiveReader.ZIP64_LOCATOR)
+          .putInt(0)
+          .putLong(offset)
+          .putInt(1);
+        out.write(zip64End.array());
+      }
+
+      ByteBuffer end = ByteBuffer.allocate(22).order(ByteOrder.LITTLE_ENDIAN);
+      end.putInt(ZipArchiveReader.END_HEADER)
+        .putShort((short)0)
+        .putShort((short)0)
+        .putShort((short)Math.min(count, 0xFFFF))
+        .putShort((short)Math.min(count, 0xFFFF))
+        .putInt((int)Math.min(directorySize, 0xFFFFFFFFL))
+        .putInt((int)Math.min(directoryOffset, 0xFFFFFFFFL))
+        .putShort((short)0);
+      out.write(end.array());
+    }
+    finally {
+      if (deflater != null) {
+        deflater.end();
+      }
+      out.close();
+    }
+  }
+
+  private static int toDosTime(long time) {
+    Calendar calendar = Calendar.getInstance();
+    calendar.setTimeInMillis(time);
+    int year = calendar.get(Calendar.YEAR);
+    if (year < 1980) {
+      return (1 << 21) | (1 << 16);
+    }
+    return (year - 1980) << 25 |
+           (calendar.get(Calendar.MONTH) + 1) << 21 |
+           calendar.get(Calendar.DAY_OF_MONTH) << 16 |
+           calendar.get(Calendar.HOUR_OF_DAY) << 11 |
+           calendar.get(Calendar.MINUTE) << 5 |
+           calendar.get(Calendar.SECOND) >> 1;
+  }
+}
@@ -69,7 +69,7 @@ public class BulkDecompilationTest {
     assertFilesEqual(new File(fixture.getTestDataDir(), name), unpacked);
   }
 
-  private static void unpack(File archive, File targetDir) {
+  static void unpack(File archive, File targetDir) {
     try (ZipFile zip = new ZipFile(archive)) {
       Enumeration<? extends ZipEntry> entries = zip.entries();
       while (entries.hasMoreElements()) {
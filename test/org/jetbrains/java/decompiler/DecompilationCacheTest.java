@@ -0,0 +1,191 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package org.jetbrains.java.decompiler;
+
+import org.jetbrains.java.decompiler.main.decompiler.ConsoleDecompiler;
+import org.jetbrains.java.decompiler.main.decompiler.PrintStreamLogger;
+import org.jetbrains.java.decompiler.main.extern.IFernflowerLogger;
+import org.jetbrains.java.decompiler.main.extern.IFernflowerPreferences;
+import org.jetbrains.java.decompiler.util.InterpreterUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.jetbrains.java.decompiler.DecompilerTestFixture.assertFilesEqual;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DecompilationCacheTest {
+  private static final String CACHE_HIT = "Using cached source of class ";
+  private static final String ABSTRACT_NAMES = "fernflower_abstract_parameter_names.txt";
+
+  private DecompilerTestFixture fixture;
+
+  @Before
+  public void setUp() throws IOException {
+    fixture = new DecompilerTestFixture();
+    fixture.setUp();
+  }
+
+  @After
+  public void tearDown() {
+    fixture.tearDown();
+    fixture = null;
+  }
+
+  @Test
+  public void testCachedOutput() throws IOException {
+    File cache = new File(fixture.getTempDir(), "cache");
+    File jar = new File(fixture.getTestDataDir(), "bulk.jar");
+
+    List<String> firstHits = new ArrayList<>();
+    File first = decompile(jar, "first", firstHits, IFernflowerPreferences.CACHE_DIRECTORY, cache.getPath());
+    assertThat(firstHits).isEmpty();
+    int entries = countEntries(cache);
+    assertThat(entries).isGreaterThan(0);
+
+    List<String> secondHits = new ArrayList<>();
+    File second = decompile(jar, "second", secondHits, IFernflowerPreferences.CACHE_DIRECTORY, cache.getPath());
+    assertThat(secondHits).hasSize(entries);
+    assertEquals(entries, countEntries(cache));
+
+    assertFilesEqual(first, second);
+  }
+
+  @Test
+  public void testInvalidation() throws IOException {
+    File cache = new File(fixture.getTempDir(), "cache");
+    File classes = new File(fixture.getTestDataDir(), "classes");
+    Map<String, byte[]> entries = new LinkedHashMap<>();
+    for (String name : new String[]{"pkg/TestShadowing", "pkg/TestShadowingSuperClass", "pkg/TestShadowingSuperClass$Builder", "ext/Shadow",
+      "ext/Shadow$B", "pkg/TestMethodParametersAttr", "pkg/TestMethodParametersAttr$1Local", "pkg/TestMethodParametersAttr$C1",
+      "pkg/TestMethodParametersAttr$C2", "pkg/TestMethodParametersAttr$C3", "pkg/TestMethodParametersAttr$C4", "pkg/TestMethodParametersAttr$I1"}) {
+      entries.put(name + ".class", InterpreterUtil.getBytes(new File(classes, name + ".class")));
+    }
+    entries.put(ABSTRACT_NAMES, "decompiler/TestMethodParametersAttr$C4 m1 (I)V first\n".getBytes(StandardCharsets.UTF_8));
+    File jar = new File(fixture.getTempDir(), "first/shadow.jar");
+    writeJar(jar, entries);
+
+    List<String> hits = new ArrayList<>();
+    decompile(jar, "first", hits, IFernflowerPreferences.CACHE_DIRECTORY, cache.getPath());
+    assertThat(hits).isEmpty();
+
+    // another option
+    File options = decompile(jar, "options", hits, IFernflowerPreferences.CACHE_DIRECTORY, cache.getPath(),
+                             IFernflowerPreferences.DECOMPILE_INNER, "0");
+    assertThat(hits).isEmpty();
+    assertFilesEqual(decompile(jar, "optionsExpected", hits, IFernflowerPreferences.DECOMPILE_INNER, "0"), options);
+
+    // a changed class which another one extends, here only in its minor version
+    byte[] superClass = entries.get("pkg/TestShadowingSuperClass.class").clone();
+    superClass[5] = 1;
+    entries.put("pkg/TestShadowingSuperClass.class", superClass);
+    File changedClass = new File(fixture.getTempDir(), "class/shadow.jar");
+    writeJar(changedClass, entries);
+    File recomputed = decompile(changedClass, "class", hits, IFernflowerPreferences.CACHE_DIRECTORY, cache.getPath());
+    assertThat(hits).containsExactlyInAnyOrder("ext/Shadow", "decompiler/TestMethodParametersAttr");
+    assertFilesEqual(decompile(changedClass, "classExpected", new ArrayList<>()), recomputed);
+
+    // changed parameter names of an abstract method
+    entries.put(ABSTRACT_NAMES, "decompiler/TestMethodParametersAttr$C4 m1 (I)V second\n".getBytes(StandardCharsets.UTF_8));
+    File changedNames = new File(fixture.getTempDir(), "names/shadow.jar");
+    writeJar(changedNames, entries);
+    hits.clear();
+    recomputed = decompile(changedNames, "names", hits, IFernflowerPreferences.CACHE_DIRECTORY, cache.getPath());
+    assertThat(hits).containsExactlyInAnyOrder("ext/Shadow", "pkg/TestShadowing", "pkg/TestShadowingSuperClass");
+    String source = new String(InterpreterUtil.getBytes(new File(recomputed, "pkg/TestMethodParametersAttr.java")), StandardCharsets.UTF_8);
+    assertThat(source).contains("abstract void m1(int second);");
+  }
+
+  @Test
+  public void testRenamingIsNotCached() throws IOException {
+    // neither the bytes nor the references of a2 change, but the members of the added class are numbered before its fields
+    File cache = new File(fixture.getTempDir(), "cache");
+    File jar = new File(fixture.getTempDir(), "obfuscated.jar");
+    File changed = new File(fixture.getTempDir(), "changed/obfuscated.jar");
+    File classes = new File(fixture.getTestDataDir(), "classes/pkg");
+    byte[] a2;
+    try (ZipFile zip = new ZipFile(new File(fixture.getTestDataDir(), "obfuscated.jar"))) {
+      a2 = InterpreterUtil.getBytes(zip, zip.getEntry("a2.class"));
+    }
+    writeJar(jar, Collections.singletonMap("a2.class", a2));
+    Map<String, byte[]> entries = new LinkedHashMap<>();
+    entries.put("a2.class", a2);
+    for (String name : new String[]{"TypeAnnotations", "TypeAnnotations$MixA", "TypeAnnotations$TA"}) {
+      entries.put("pkg/" + name + ".class", InterpreterUtil.getBytes(new File(classes, name + ".class")));
+    }
+    writeJar(changed, entries);
+
+    List<String> hits = new ArrayList<>();
+    decompile(jar, "first", hits, IFernflowerPreferences.RENAME_ENTITIES, "1", IFernflowerPreferences.CACHE_DIRECTORY, cache.getPath());
+    File cached = decompile(changed, "cached", hits, IFernflowerPreferences.RENAME_ENTITIES, "1", IFernflowerPreferences.CACHE_DIRECTORY,
+                            cache.getPath());
+    File expected = decompile(changed, "expected", hits, IFernflowerPreferences.RENAME_ENTITIES, "1");
+
+    assertFalse(cache.exists());
+    assertFilesEqual(expected, cached);
+  }
+
+  // the names of the classes whose source came from the cache are added to hits
+  private File decompile(File source, String name, List<String> hits, String... optionPairs) throws IOException {
+    DecompilerTestFixture run = new DecompilerTestFixture();
+    run.setUp(optionPairs);
+    try {
+      IFernflowerLogger logger = new PrintStreamLogger(System.out) {
+        @Override
+        public void writeMessage(String message, Severity severity) {
+          if (message.startsWith(CACHE_HIT)) {
+            synchronized (hits) {
+              hits.add(message.substring(CACHE_HIT.length()));
+            }
+          }
+          super.writeMessage(message, severity);
+        }
+      };
+      ConsoleDecompiler decompiler = new ConsoleDecompiler(run.getTargetDir(), run.getOptions(), logger) { };
+      decompiler.addSource(source);
+      decompiler.decompileContext();
+
+      File target = new File(fixture.getTempDir(), name);
+      BulkDecompilationTest.unpack(new File(run.getTargetDir(), source.getName()), target);
+      return target;
+    }
+    finally {
+      run.tearDown();
+    }
+  }
+
+  private static int countEntries(File directory) {
+    int count = 0;
+    for (File file : Objects.requireNonNull(directory.listFiles())) {
+      count += file.isDirectory() ? countEntries(file) : 1;
+    }
+    return count;
+  }
+
+  private static void writeJar(File target, Map<String, byte[]> entries) throws IOException {
+    assertTrue(target.getParentFile().mkdirs() || target.getParentFile().isDirectory());
+    try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(target))) {
+      for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+        out.putNextEntry(new ZipEntry(entry.getKey()));
+        out.write(entry.getValue());
+        out.closeEntry();
+      }
+    }
+  }
+}
@@ -0,0 +1,77 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package org.jetbrains.java.decompiler;
+
+import org.jetbrains.java.decompiler.main.DecompilerContext;
+import org.jetbrains.java.decompiler.main.Fernflower;
+import org.jetbrains.java.decompiler.main.decompiler.ConsoleDecompiler;
+import org.jetbrains.java.decompiler.main.decompiler.PrintStreamLogger;
+import org.jetbrains.java.decompiler.util.InterpreterUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class DecompileClassTest {
+  // anonymous, local, member and inner classes, inherited inner constructors and lambdas
+  private static final String[] CLASSES = {"TestAnonymousClass", "TestClassLambda", "TestInnerClassConstructor", "TestInnerLocal"};
+
+  private DecompilerTestFixture fixture;
+
+  @Before
+  public void setUp() throws IOException {
+    fixture = new DecompilerTestFixture();
+    fixture.setUp();
+  }
+
+  @After
+  public void tearDown() {
+    fixture.tearDown();
+    fixture = null;
+  }
+
+  @Test
+  public void testSameAsFullRun() throws IOException {
+    File classes = new File(fixture.getTempDir(), "classes");
+    File pkg = new File(classes, "pkg");
+    assertTrue(pkg.mkdirs());
+    for (File file : Objects.requireNonNull(new File(fixture.getTestDataDir(), "classes/pkg").listFiles())) {
+      String name = file.getName();
+      for (String prefix : CLASSES) {
+        if (name.equals(prefix + ".class") || name.startsWith(prefix + "$")) {
+          InterpreterUtil.copyFile(file, new File(pkg, name));
+        }
+      }
+    }
+
+    ConsoleDecompiler decompiler = fixture.getDecompiler();
+    decompiler.addSource(classes);
+    decompiler.decompileContext();
+
+    Fernflower engine = new Fernflower(decompiler, decompiler, fixture.getOptions(), new PrintStreamLogger(System.out));
+    try {
+      engine.addSource(classes);
+
+      String[] names = Objects.requireNonNull(pkg.list());
+      assertThat(names.length).isGreaterThan(CLASSES.length);
+      for (String name : names) {
+        // nested classes give the source of their root class
+        String root = name.substring(0, name.indexOf(name.contains("$") ? '$' : '.'));
+        File expected = new File(fixture.getTargetDir(), "pkg/" + root + ".java");
+        String content = engine.decompileClass("pkg/" + name.substring(0, name.length() - ".class".length()));
+
+        assertThat(content).as(name).isEqualTo(new String(InterpreterUtil.getBytes(expected), StandardCharsets.UTF_8));
+        assertThat(DecompilerContext.getClassProcessor().getMapRootClasses()).as(name).isEmpty();
+      }
+    }
+    finally {
+      engine.clearContext();
+    }
+  }
+}
@@ -0,0 +1,125 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package org.jetbrains.java.decompiler;
+
+import org.jetbrains.java.decompiler.main.decompiler.ConsoleDecompiler;
+import org.jetbrains.java.decompiler.main.decompiler.DecompilerDaemon;
+import org.jetbrains.java.decompiler.main.decompiler.PrintStreamLogger;
+import org.jetbrains.java.decompiler.util.InterpreterUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.jetbrains.java.decompiler.DecompilerTestFixture.assertFilesEqual;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DecompilerDaemonTest {
+  private static final String ABSTRACT_NAMES = "fernflower_abstract_parameter_names.txt";
+
+  private DecompilerTestFixture fixture;
+
+  @Before
+  public void setUp() throws IOException {
+    fixture = new DecompilerTestFixture();
+    fixture.setUp();
+  }
+
+  @After
+  public void tearDown() {
+    fixture.tearDown();
+    fixture = null;
+  }
+
+  @Test
+  public void testSameOutputAsSingleRun() throws IOException {
+    // the libraries hold the super class of a source and the parameter names of abstract methods in the sources
+    File library = writeJar("library.jar", ABSTRACT_NAMES, "decompiler/TestMethodParametersAttr$C4 m1 (I)V library\n",
+                            "pkg/TestShadowingSuperClass", "pkg/TestShadowingSuperClass$Builder", "ext/Shadow", "ext/Shadow$B");
+    File requestLibrary = writeJar("request.jar", ABSTRACT_NAMES, "decompiler/TestMethodParametersAttr$C4 m2 (I)V request\n");
+    File source = writeJar("source.jar", null, null, "pkg/TestShadowing", "pkg/TestMethodParametersAttr",
+                           "pkg/TestMethodParametersAttr$1Local", "pkg/TestMethodParametersAttr$C1", "pkg/TestMethodParametersAttr$C2",
+                           "pkg/TestMethodParametersAttr$C3", "pkg/TestMethodParametersAttr$C4", "pkg/TestMethodParametersAttr$I1");
+
+    File expected = decompile("expected", source, library);
+    File expectedWithRequestLibrary = decompile("expectedWithRequestLibrary", source, library, requestLibrary);
+    String text = new String(InterpreterUtil.getBytes(new File(expectedWithRequestLibrary, "pkg/TestMethodParametersAttr.java")),
+                             StandardCharsets.UTF_8);
+    assertThat(text).contains("abstract void m1(int library);").contains("abstract void m2(final int request);");
+
+    try (DecompilerDaemon daemon = new DecompilerDaemon(fixture.getOptions(), Collections.singletonList(library),
+                                                        new PrintStreamLogger(System.out))) {
+      // names given with one request must not be seen by the next one
+      assertFilesEqual(expected, request(daemon, "first", source));
+      assertFilesEqual(expectedWithRequestLibrary, request(daemon, "second", source, "-e=" + requestLibrary.getPath()));
+      assertFilesEqual(expected, request(daemon, "third", source));
+    }
+  }
+
+  private File request(DecompilerDaemon daemon, String name, File source, String... args) throws IOException {
+    File destination = new File(fixture.getTempDir(), name + "Output");
+    assertTrue(destination.mkdirs());
+
+    List<String> request = new ArrayList<>(Arrays.asList(args));
+    request.add(source.getPath());
+    request.add(destination.getPath());
+    assertEquals("ok", daemon.decompile(request));
+
+    File target = new File(fixture.getTempDir(), name);
+    BulkDecompilationTest.unpack(new File(destination, source.getName()), target);
+    return target;
+  }
+
+  private File decompile(String name, File source, File... libraries) throws IOException {
+    DecompilerTestFixture run = new DecompilerTestFixture();
+    run.setUp();
+    try {
+      ConsoleDecompiler decompiler = run.getDecompiler();
+      for (File library : libraries) {
+        decompiler.addLibrary(library);
+      }
+      decompiler.addSource(source);
+      decompiler.decompileContext();
+
+      File target = new File(fixture.getTempDir(), name);
+      BulkDecompilationTest.unpack(new File(run.getTargetDir(), source.getName()), target);
+      return target;
+    }
+    finally {
+      run.tearDown();
+    }
+  }
+
+  private File writeJar(String name, String textEntry, String text, String... classes) throws IOException {
+    Map<String, byte[]> entries = new LinkedHashMap<>();
+    for (String cl : classes) {
+      entries.put(cl + ".class", InterpreterUtil.getBytes(new File(fixture.getTestDataDir(), "classes/" + cl + ".class")));
+    }
+    if (textEntry != null) {
+      entries.put(textEntry, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    File jar = new File(fixture.getTempDir(), name);
+    try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+      for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+        out.putNextEntry(new ZipEntry(entry.getKey()));
+        out.write(entry.getValue());
+        out.closeEntry();
+      }
+    }
+    return jar;
+  }
+}
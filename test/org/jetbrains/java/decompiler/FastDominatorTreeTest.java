@@ -0,0 +1,231 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package org.jetbrains.java.decompiler;
+
+import org.jetbrains.java.decompiler.modules.decompiler.decompose.FastDominatorTree;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FastDominatorTreeTest {
+  @Test
+  public void testLoopAndDiamond() {
+    // 0 -> 1 -> {2, 3} -> 4 -> 1, 4 -> 5
+    int[][] succs = {{1}, {2, 3}, {4}, {4}, {1, 5}, {}};
+    FastDominatorTree tree = assertDominators(succs, 0);
+    assertEquals(0, tree.getIDom(0));
+    assertEquals(1, tree.getIDom(4));
+    assertEquals(4, tree.getIDom(5));
+  }
+
+  @Test
+  public void testMultipleRoots() {
+    // 0 -> 1 -> 2 and 3 -> 4, with the trees of the roots merging in 5 -> 6
+    int[][] succs = {{1}, {2, 5}, {}, {4}, {5}, {6}, {}};
+    FastDominatorTree tree = assertDominators(succs, 0, 3);
+    assertEquals(3, tree.getIDom(3));
+    assertEquals(5, tree.getIDom(5));
+    assertEquals(5, tree.getIDom(6));
+    assertFalse(tree.isDominator(5, 1));
+    assertFalse(tree.isDominator(6, 0));
+  }
+
+  @Test
+  public void testRootReachableFromRoot() {
+    // 2 is a root of its own as well as a successor of 1
+    int[][] succs = {{1}, {2}, {3}, {}};
+    FastDominatorTree tree = assertDominators(succs, 0, 2);
+    assertEquals(2, tree.getIDom(2));
+    assertEquals(2, tree.getIDom(3));
+    assertFalse(tree.isDominator(3, 1));
+
+    assertDominators(succs, 2, 0);
+  }
+
+  @Test
+  public void testIrreducible() {
+    // the loop of 1 and 2 has two entries
+    int[][] succs = {{1, 2}, {2, 3}, {1, 3}, {}};
+    FastDominatorTree tree = assertDominators(succs, 0);
+    assertEquals(0, tree.getIDom(1));
+    assertEquals(0, tree.getIDom(2));
+    assertEquals(0, tree.getIDom(3));
+
+    // nested irreducible loops
+    assertDominators(new int[][]{{1, 3}, {2}, {3, 1, 4}, {2, 4}, {5, 1}, {}}, 0);
+  }
+
+  @Test
+  public void testUnreachable() {
+    // 3 and 4 can't be reached, but 3 has an edge into the reachable part
+    int[][] succs = {{1}, {2}, {}, {2, 4}, {3}};
+    FastDominatorTree tree = assertDominators(succs, 0);
+    assertFalse(tree.isReachable(3));
+    assertEquals(-1, tree.getIDom(3));
+    assertEquals(1, tree.getIDom(2));
+    assertFalse(tree.isDominator(2, 3));
+    assertFalse(tree.isDominator(3, 0));
+    assertTrue(tree.isDominator(3, 3));
+  }
+
+  @Test
+  public void testSelfLoops() {
+    assertDominators(new int[][]{{0, 1}, {1, 2}, {2}}, 0);
+  }
+
+  @Test
+  public void testRandomGraphs() {
+    Random random = new Random(42);
+    for (int i = 0; i < 5000; i++) {
+      int size = 1 + random.nextInt(12);
+
+      int[][] succs = new int[size][];
+      for (int node = 0; node < size; node++) {
+        int count = random.nextInt(4);
+        succs[node] = new int[count];
+        for (int j = 0; j < count; j++) {
+          succs[node][j] = random.nextInt(size);
+        }
+      }
+
+      List<Integer> nodes = new ArrayList<>();
+      for (int node = 0; node < size; node++) {
+        nodes.add(node);
+      }
+      Collections.shuffle(nodes, random);
+      int[] roots = new int[1 + random.nextInt(Math.min(3, size))];
+      for (int j = 0; j < roots.length; j++) {
+        roots[j] = nodes.get(j);
+      }
+
+      assertDominators(succs, roots);
+    }
+  }
+
+  private static FastDominatorTree assertDominators(int[][] succs, int... roots) {
+    String graph = Arrays.deepToString(succs) + " roots " + Arrays.toString(roots);
+    int size = succs.length;
+
+    boolean[] reachable = getReachable(succs, roots, -1);
+    // dominators[node][dom]: every path from a root to the node passes through dom
+    boolean[][] dominators = new boolean[size][size];
+    for (int dom = 0; dom < size; dom++) {
+      boolean[] withoutDom = getReachable(succs, roots, dom);
+      for (int node = 0; node < size; node++) {
+        dominators[node][dom] = reachable[node] && reachable[dom] && (node == dom || !withoutDom[node]);
+      }
+    }
+
+    FastDominatorTree tree = FastDominatorTree.ofSuccessors(succs, roots);
+    assertTree(graph, tree, size, reachable, dominators);
+
+    // the same graph numbered in reverse post-order
+    int[] order = getReversePostOrder(succs, roots);
+    int[] positions = new int[size];
+    Arrays.fill(positions, -1);
+    for (int i = 0; i < order.length; i++) {
+      positions[order[i]] = i;
+    }
+    List<List<Integer>> preds = new ArrayList<>();
+    for (int i = 0; i < order.length; i++) {
+      preds.add(new ArrayList<>());
+    }
+    for (int node : order) {
+      for (int succ : succs[node]) {
+        preds.get(positions[succ]).add(positions[node]);
+      }
+    }
+    int[][] orderedPreds = new int[order.length][];
+    boolean[] isRoot = new boolean[order.length];
+    for (int i = 0; i < order.length; i++) {
+      orderedPreds[i] = preds.get(i).stream().mapToInt(Integer::intValue).toArray();
+    }
+    for (int root : roots) {
+      isRoot[positions[root]] = true;
+    }
+
+    boolean[] orderedReachable = new boolean[order.length];
+    Arrays.fill(orderedReachable, true);
+    boolean[][] orderedDominators = new boolean[order.length][order.length];
+    for (int node = 0; node < order.length; node++) {
+      for (int dom = 0; dom < order.length; dom++) {
+        orderedDominators[node][dom] = dominators[order[node]][order[dom]];
+      }
+    }
+    assertTree(graph + " in reverse post-order", FastDominatorTree.ofOrderedPredecessors(orderedPreds, isRoot), order.length,
+               orderedReachable, orderedDominators);
+
+    return tree;
+  }
+
+  private static void assertTree(String graph, FastDominatorTree tree, int size, boolean[] reachable, boolean[][] dominators) {
+    for (int node = 0; node < size; node++) {
+      String message = graph + ", node " + node;
+      assertEquals(message, reachable[node], tree.isReachable(node));
+
+      for (int dom = 0; dom < size; dom++) {
+        assertEquals(message + ", dominator " + dom, dominators[node][dom] || node == dom, tree.isDominator(node, dom));
+      }
+
+      // the immediate dominator is the strict dominator dominated by all others
+      int idom = reachable[node] ? node : -1;
+      for (int dom = 0; dom < size; dom++) {
+        if (dom != node && dominators[node][dom] && (idom == node || dominators[dom][idom])) {
+          idom = dom;
+        }
+      }
+      assertEquals(message, idom, tree.getIDom(node));
+    }
+  }
+
+  private static boolean[] getReachable(int[][] succs, int[] roots, int removed) {
+    boolean[] reachable = new boolean[succs.length];
+    int[] stack = new int[succs.length];
+    int depth = 0;
+    for (int root : roots) {
+      if (root != removed && !reachable[root]) {
+        reachable[root] = true;
+        stack[depth++] = root;
+      }
+    }
+    while (depth > 0) {
+      int node = stack[--depth];
+      for (int succ : succs[node]) {
+        if (succ != removed && !reachable[succ]) {
+          reachable[succ] = true;
+          stack[depth++] = succ;
+        }
+      }
+    }
+    return reachable;
+  }
+
+  private static int[] getReversePostOrder(int[][] succs, int[] roots) {
+    boolean[] visited = new boolean[succs.length];
+    List<Integer> postOrder = new ArrayList<>();
+    for (int root : roots) {
+      visitPostOrder(root, succs, visited, postOrder);
+    }
+    int[] order = new int[postOrder.size()];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = postOrder.get(order.length - 1 - i);
+    }
+    return order;
+  }
+
+  private static void visitPostOrder(int node, int[][] succs, boolean[] visited, List<Integer> postOrder) {
+    if (visited[node]) {
+      return;
+    }
+    visited[node] = true;
+    for (int succ : succs[node]) {
+      visitPostOrder(succ, succs, visited, postOrder);
+    }
+    postOrder.add(node);
+  }
+}
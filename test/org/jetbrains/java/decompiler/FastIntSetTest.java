@@ -0,0 +1,231 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package org.jetbrains.java.decompiler;
+
+import org.jetbrains.java.decompiler.util.FastIntSet;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
+
+public class FastIntSetTest {
+  @Test public void testCopyAfterAdd() { doTestCopy(set -> set.add(4)); }
+  @Test public void testCopyAfterAddGrowing() { doTestCopy(set -> set.add(500)); }
+  @Test public void testCopyAfterAddPresent() { doTestCopy(set -> set.add(3)); }
+  @Test public void testCopyAfterRemove() { doTestCopy(set -> set.remove(3)); }
+  @Test public void testCopyAfterUnion() { doTestCopy(set -> set.union(setOf(4, 65))); }
+  @Test public void testCopyAfterUnionGrowing() { doTestCopy(set -> set.union(setOf(4, 64, 300))); }
+  @Test public void testCopyAfterIntersection() { doTestCopy(set -> set.intersection(setOf(3, 70))); }
+  @Test public void testCopyAfterComplement() { doTestCopy(set -> set.complement(setOf(3, 130))); }
+
+  @Test
+  public void testCopyAfterIteratorRemove() {
+    doTestCopy(set -> {
+      Iterator<Integer> iterator = set.iterator();
+      iterator.next();
+      iterator.remove();
+    });
+  }
+
+  // changing either the set or its copy must not change the other one
+  private static void doTestCopy(Consumer<FastIntSet> mutator) {
+    int[] elements = {3, 5, 64, 70, 130};
+
+    FastIntSet original = setOf(elements);
+    FastIntSet copy = original.getCopy();
+    FastIntSet expected = setOf(elements);
+    mutator.accept(expected);
+
+    mutator.accept(copy);
+    assertEquals(plainSetOf(elements), original.toPlainSet());
+    assertEquals(expected.toPlainSet(), copy.toPlainSet());
+
+    original = setOf(elements);
+    copy = original.getCopy();
+    mutator.accept(original);
+    assertEquals(plainSetOf(elements), copy.toPlainSet());
+    assertEquals(expected.toPlainSet(), original.toPlainSet());
+
+    // a copy of a copy
+    original = setOf(elements);
+    FastIntSet second = original.getCopy().getCopy();
+    mutator.accept(second);
+    assertEquals(plainSetOf(elements), original.toPlainSet());
+    assertEquals(expected.toPlainSet(), second.toPlainSet());
+  }
+
+  @Test
+  public void testGrowth() {
+    FastIntSet set = setOf(1);
+
+    // each of these needs more blocks than the set has
+    int[] added = {63, 64, 127, 128, 64 * 5 + 1, 64 * 40};
+    for (int element : added) {
+      set.add(element);
+      assertTrue(set.contains(element));
+      assertFalse(set.contains(element + 1));
+    }
+    assertEquals(plainSetOf(1, 63, 64, 127, 128, 321, 2560), set.toPlainSet());
+    assertEquals(2560, set.nextElement(322));
+    assertEquals(-1, set.nextElement(2561));
+    assertEquals(-1, set.nextElement(100000));
+
+    List<Integer> iterated = new ArrayList<>();
+    for (int element : set) {
+      iterated.add(element);
+    }
+    assertEquals(Arrays.asList(1, 63, 64, 127, 128, 321, 2560), iterated);
+
+    // a union with a longer set, into a set and into a copy
+    FastIntSet small = setOf(2);
+    FastIntSet copy = small.getCopy();
+    small.union(set);
+    assertEquals(plainSetOf(1, 2, 63, 64, 127, 128, 321, 2560), small.toPlainSet());
+    assertEquals(plainSetOf(2), copy.toPlainSet());
+
+    FastIntSet empty = new FastIntSet();
+    empty.union(setOf(1000));
+    assertEquals(plainSetOf(1000), empty.toPlainSet());
+
+    // removing elements beyond the blocks of a set changes nothing
+    FastIntSet shortSet = setOf(5);
+    shortSet.remove(1000);
+    shortSet.intersection(set);
+    assertTrue(shortSet.isEmpty());
+  }
+
+  @Test
+  public void testEqualsDifferentLengths() {
+    FastIntSet shortSet = setOf(3, 70);
+    FastIntSet longSet = setOf(3, 70, 1000);
+    assertNotEquals(shortSet, longSet);
+    assertNotEquals(longSet, shortSet);
+
+    // the removed element leaves empty blocks behind
+    longSet.remove(1000);
+    assertEquals(shortSet, longSet);
+    assertEquals(longSet, shortSet);
+    assertEquals(shortSet.hashCode(), longSet.hashCode());
+
+    longSet.add(999);
+    assertNotEquals(shortSet, longSet);
+    assertNotEquals(longSet, shortSet);
+
+    longSet.complement(setOf(999));
+    assertEquals(shortSet, longSet);
+
+    FastIntSet empty = new FastIntSet();
+    FastIntSet emptied = setOf(500);
+    emptied.remove(500);
+    assertEquals(empty, emptied);
+    assertEquals(emptied, empty);
+    assertEquals(empty.hashCode(), emptied.hashCode());
+
+    // the same bits in a copy
+    FastIntSet copy = shortSet.getCopy();
+    assertEquals(shortSet, copy);
+    copy.add(2);
+    assertNotEquals(shortSet, copy);
+  }
+
+  @Test
+  public void testCardinality() {
+    assertEquals(0, new FastIntSet().getCardinality());
+    assertEquals(1, setOf(200).getCardinality());
+    assertEquals(2, setOf(1, 2).getCardinality());
+    assertEquals(2, setOf(1, 200).getCardinality());
+  }
+
+  @Test
+  public void testAgainstHashSet() {
+    Random random = new Random(42);
+    List<FastIntSet> sets = new ArrayList<>();
+    List<Set<Integer>> expected = new ArrayList<>();
+    sets.add(new FastIntSet());
+    expected.add(new HashSet<>());
+
+    for (int step = 0; step < 20000; step++) {
+      int index = random.nextInt(sets.size());
+      FastIntSet set = sets.get(index);
+      Set<Integer> plain = expected.get(index);
+      FastIntSet other = sets.get(random.nextInt(sets.size()));
+      Set<Integer> otherPlain = other.toPlainSet();
+      int element = random.nextInt(random.nextBoolean() ? 64 : 400);
+
+      switch (random.nextInt(7)) {
+        case 0:
+          set.add(element);
+          plain.add(element);
+          break;
+        case 1:
+          set.remove(element);
+          plain.remove(element);
+          break;
+        case 2:
+          set.union(other);
+          plain.addAll(otherPlain);
+          break;
+        case 3:
+          set.intersection(other);
+          plain.retainAll(otherPlain);
+          break;
+        case 4:
+          set.complement(other);
+          plain.removeAll(otherPlain);
+          break;
+        default:
+          if (sets.size() < 50) {
+            sets.add(set.getCopy());
+            expected.add(new HashSet<>(plain));
+          }
+      }
+
+      for (int i = 0; i < sets.size(); i++) {
+        assertSameSet(expected.get(i), sets.get(i));
+      }
+    }
+  }
+
+  private static void assertSameSet(Set<Integer> expected, FastIntSet set) {
+    assertEquals(expected, set.toPlainSet());
+    assertEquals(expected.isEmpty(), set.isEmpty());
+    assertEquals(Math.min(expected.size(), 2), set.getCardinality());
+
+    List<Integer> iterated = new ArrayList<>();
+    for (int element : set) {
+      iterated.add(element);
+    }
+    assertEquals(new ArrayList<>(new TreeSet<>(expected)), iterated);
+
+    FastIntSet rebuilt = new FastIntSet();
+    for (int element : expected) {
+      rebuilt.add(element);
+    }
+    assertEquals(rebuilt, set);
+    assertEquals(rebuilt.hashCode(), set.hashCode());
+  }
+
+  private static FastIntSet setOf(int... elements) {
+    FastIntSet set = new FastIntSet();
+    for (int element : elements) {
+      set.add(element);
+    }
+    return set;
+  }
+
+  private static Set<Integer> plainSetOf(int... elements) {
+    Set<Integer> set = new HashSet<>();
+    for (int element : elements) {
+      set.add(element);
+    }
+    return set;
+  }
+}
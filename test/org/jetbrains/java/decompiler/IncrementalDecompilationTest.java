@@ -0,0 +1,197 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package org.jetbrains.java.decompiler;
+
+import org.jetbrains.java.decompiler.main.IncrementalHelper;
+import org.jetbrains.java.decompiler.main.decompiler.ConsoleDecompiler;
+import org.jetbrains.java.decompiler.main.decompiler.PrintStreamLogger;
+import org.jetbrains.java.decompiler.main.extern.IFernflowerLogger;
+import org.jetbrains.java.decompiler.main.extern.IFernflowerPreferences;
+import org.jetbrains.java.decompiler.util.InterpreterUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.jetbrains.java.decompiler.DecompilerTestFixture.assertFilesEqual;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class IncrementalDecompilationTest {
+  private static final Pattern REUSED = Pattern.compile("Reusing the previous output of (\\d+) classes of .*");
+
+  private static final String[] LIBRARY = {"pkg/TestShadowingSuperClass", "pkg/TestShadowingSuperClass$Builder", "ext/Shadow", "ext/Shadow$B"};
+  private static final String[] SOURCE = {"pkg/TestShadowing", "pkg/TestLocalClass", "pkg/TestLocalClass$1Local", "pkg/TestInterfaceMethods"};
+  private static final int ROOTS = 3;
+
+  private DecompilerTestFixture fixture;
+
+  @Before
+  public void setUp() throws IOException {
+    fixture = new DecompilerTestFixture();
+    fixture.setUp();
+  }
+
+  @After
+  public void tearDown() {
+    fixture.tearDown();
+    fixture = null;
+  }
+
+  @Test
+  public void testUnchanged() throws IOException {
+    File library = writeJar("library/library.jar", getClasses(LIBRARY));
+    File source = writeJar("source/source.jar", getClasses(SOURCE));
+    File first = decompile("first", source, library, null, null);
+    try (ZipFile archive = new ZipFile(first)) {
+      String record = new String(InterpreterUtil.getBytes(archive, archive.getEntry(IncrementalHelper.RECORD_ENTRY)), StandardCharsets.UTF_8);
+      assertThat(record).startsWith("engine ").contains("\npkg/TestShadowingSuperClass ").contains("\njava/lang/Object -\n");
+    }
+
+    Run second = new Run("second", source, library, source, first);
+    assertEquals(Integer.valueOf(ROOTS), second.reused);
+    assertArchivesEqual(first, second.output);
+  }
+
+  @Test
+  public void testChangedLibrary() throws IOException {
+    Map<String, byte[]> libraryClasses = getClasses(LIBRARY);
+    File library = writeJar("library/library.jar", libraryClasses);
+    File source = writeJar("source/source.jar", getClasses(SOURCE));
+    File first = decompile("first", source, library, null, null);
+
+    // the class which TestShadowing extends, here only changed in its minor version
+    byte[] superClass = libraryClasses.get("pkg/TestShadowingSuperClass.class").clone();
+    superClass[5] = 1;
+    libraryClasses.put("pkg/TestShadowingSuperClass.class", superClass);
+    File changedLibrary = writeJar("changed/library.jar", libraryClasses);
+
+    Run second = new Run("second", source, changedLibrary, source, first);
+    assertEquals(Integer.valueOf(ROOTS - 1), second.reused);
+    assertArchivesEqual(decompile("expected", source, changedLibrary, null, null), second.output);
+  }
+
+  @Test
+  public void testChangedOptions() throws IOException {
+    File library = writeJar("library/library.jar", getClasses(LIBRARY));
+    File source = writeJar("source/source.jar", getClasses(SOURCE));
+    File first = decompile("first", source, library, null, null);
+
+    Run second = new Run("second", source, library, source, first, IFernflowerPreferences.DECOMPILE_INNER, "0");
+    assertNull(second.reused);
+    assertArchivesEqual(decompile("expected", source, library, null, null, IFernflowerPreferences.DECOMPILE_INNER, "0"), second.output);
+  }
+
+  @Test
+  public void testNoRecord() throws IOException {
+    File library = writeJar("library/library.jar", getClasses(LIBRARY));
+    File source = writeJar("source/source.jar", getClasses(SOURCE));
+    File first = decompile("first", source, library, null, null);
+
+    // the output of an older version
+    Map<String, byte[]> entries = new LinkedHashMap<>();
+    try (ZipFile archive = new ZipFile(first)) {
+      Enumeration<? extends ZipEntry> e = archive.entries();
+      while (e.hasMoreElements()) {
+        ZipEntry entry = e.nextElement();
+        if (!entry.getName().equals(IncrementalHelper.RECORD_ENTRY)) {
+          entries.put(entry.getName(), InterpreterUtil.getBytes(archive, entry));
+        }
+      }
+    }
+    File older = writeJar("older/source.jar", entries);
+
+    Run second = new Run("second", source, library, source, older);
+    assertNull(second.reused);
+    assertArchivesEqual(first, second.output);
+  }
+
+  private File decompile(String name, File source, File library, File previousSource, File previousOutput, String... optionPairs)
+    throws IOException {
+    return new Run(name, source, library, previousSource, previousOutput, optionPairs).output;
+  }
+
+  private class Run {
+    final File output;
+    Integer reused;  // null if the source was decompiled in full
+
+    Run(String name, File source, File library, File previousSource, File previousOutput, String... optionPairs) throws IOException {
+      DecompilerTestFixture run = new DecompilerTestFixture();
+      run.setUp(optionPairs);
+      try {
+        IFernflowerLogger logger = new PrintStreamLogger(System.out) {
+          @Override
+          public void writeMessage(String message, Severity severity) {
+            Matcher matcher = REUSED.matcher(message);
+            if (matcher.matches()) {
+              reused = Integer.valueOf(matcher.group(1));
+            }
+            super.writeMessage(message, severity);
+          }
+        };
+        ConsoleDecompiler decompiler = new ConsoleDecompiler(run.getTargetDir(), run.getOptions(), logger) { };
+        decompiler.addLibrary(library);
+        if (previousSource != null) {
+          decompiler.addSource(source, previousSource, previousOutput);
+        }
+        else {
+          decompiler.addSource(source);
+        }
+        decompiler.decompileContext();
+
+        output = new File(fixture.getTempDir(), name + "/" + source.getName());
+        assertTrue(output.getParentFile().mkdirs());
+        assertTrue(new File(run.getTargetDir(), source.getName()).renameTo(output));
+      }
+      finally {
+        run.tearDown();
+      }
+    }
+  }
+
+  private void assertArchivesEqual(File expected, File actual) throws IOException {
+    File expectedDir = new File(expected.getParentFile(), "unpacked");
+    File actualDir = new File(actual.getParentFile(), "unpacked");
+    BulkDecompilationTest.unpack(expected, expectedDir);
+    BulkDecompilationTest.unpack(actual, actualDir);
+    assertFilesEqual(expectedDir, actualDir);
+    assertFilesEqual(actualDir, expectedDir);
+  }
+
+  private Map<String, byte[]> getClasses(String... names) throws IOException {
+    Map<String, byte[]> classes = new LinkedHashMap<>();
+    for (String name : names) {
+      File file = new File(fixture.getTestDataDir(), "classes/" + name + ".class");
+      classes.put(name + ".class", InterpreterUtil.getBytes(file));
+    }
+    return classes;
+  }
+
+  private File writeJar(String name, Map<String, byte[]> entries) throws IOException {
+    File jar = new File(fixture.getTempDir(), name);
+    assertTrue(jar.getParentFile().mkdirs() || jar.getParentFile().isDirectory());
+    try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+      for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+        assertNotNull(entry.getValue());
+        out.putNextEntry(new ZipEntry(entry.getKey()));
+        out.write(entry.getValue());
+        out.closeEntry();
+      }
+    }
+    return jar;
+  }
+}
@@ -0,0 +1,119 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package org.jetbrains.java.decompiler;
+
+import org.jetbrains.java.decompiler.main.ClassesProcessor;
+import org.jetbrains.java.decompiler.main.ClassesProcessor.ClassNode;
+import org.jetbrains.java.decompiler.main.DecompilerContext;
+import org.jetbrains.java.decompiler.main.Fernflower;
+import org.jetbrains.java.decompiler.main.collectors.ImportCollector;
+import org.jetbrains.java.decompiler.main.decompiler.PrintStreamLogger;
+import org.jetbrains.java.decompiler.main.extern.IFernflowerPreferences;
+import org.jetbrains.java.decompiler.main.rels.MethodProcessor;
+import org.jetbrains.java.decompiler.modules.decompiler.sforms.SSAConstructorSparseEx;
+import org.jetbrains.java.decompiler.modules.decompiler.sforms.SSAUConstructorSparseEx;
+import org.jetbrains.java.decompiler.modules.decompiler.stats.RootStatement;
+import org.jetbrains.java.decompiler.modules.decompiler.vars.VarProcessor;
+import org.jetbrains.java.decompiler.struct.StructMethod;
+import org.jetbrains.java.decompiler.struct.gen.MethodDescriptor;
+import org.jetbrains.java.decompiler.util.InterpreterUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Times the SSA and SSAU passes of {@code splitVariables()} on the largest methods of the test data.
+ * Each pass runs on a statement tree built fresh for it, building the tree is not timed.
+ *
+ * Run with {@code ./gradlew splitVariablesBenchmark}, or run the main method from the project directory with
+ * {@code [<number of methods, 20>] [<rounds, 30>]}. The first third of the rounds warms up and is not counted.
+ */
+public class SplitVariablesBenchmark {
+  public static void main(String[] args) throws IOException {
+    int count = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+    int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+
+    Map<String, Object> options = new HashMap<>();
+    options.put(IFernflowerPreferences.LOG_LEVEL, "error");
+    options.put(IFernflowerPreferences.DECOMPILE_GENERIC_SIGNATURES, "1");
+    Fernflower engine = new Fernflower((externalPath, internalPath) -> InterpreterUtil.getBytes(new File(externalPath)), null, options,
+                                       new PrintStreamLogger(System.out));
+    try {
+      engine.addSource(new File("testData/classes"));
+      ClassesProcessor processor = DecompilerContext.getClassProcessor();
+      processor.loadClasses(null);
+
+      List<StructMethod> methods = new ArrayList<>();
+      Map<StructMethod, ClassNode> roots = new HashMap<>();
+      for (ClassNode node : processor.getMapRootClasses().values()) {
+        if (node.type != ClassNode.CLASS_LAMBDA) {
+          ClassNode root = node;
+          while (root.parent != null) {
+            root = root.parent;
+          }
+          for (StructMethod mt : node.classStruct.getMethods()) {
+            if (mt.containsCode()) {
+              methods.add(mt);
+              roots.put(mt, root);
+            }
+          }
+        }
+      }
+      methods.sort(Comparator.comparingInt(StructMethod::getCodeFullLength).reversed());
+      methods = methods.subList(0, Math.min(count, methods.size()));
+
+      long[] ssaTimes = new long[methods.size()];
+      long[] ssauTimes = new long[methods.size()];
+      for (int round = 0; round < rounds; round++) {
+        boolean counted = round >= rounds / 3;
+        for (int i = 0; i < methods.size(); i++) {
+          StructMethod mt = methods.get(i);
+          DecompilerContext.startClass(new ImportCollector(roots.get(mt)));
+          DecompilerContext.setProperty(DecompilerContext.CURRENT_CLASS, mt.getClassStruct());
+
+          RootStatement root = buildStatements(mt);
+          long start = System.nanoTime();
+          new SSAConstructorSparseEx().splitVariables(root, mt);
+          long ssaTime = System.nanoTime() - start;
+
+          root = buildStatements(mt);
+          start = System.nanoTime();
+          new SSAUConstructorSparseEx().splitVariables(root, mt);
+          long ssauTime = System.nanoTime() - start;
+
+          mt.releaseResources();
+          if (counted) {
+            ssaTimes[i] += ssaTime;
+            ssauTimes[i] += ssauTime;
+          }
+        }
+      }
+
+      int counted = rounds - rounds / 3;
+      long ssaTotal = 0, ssauTotal = 0;
+      System.out.printf("%10s %10s %10s  %s%n", "bytes", "SSA us", "SSAU us", "method");
+      for (int i = 0; i < methods.size(); i++) {
+        StructMethod mt = methods.get(i);
+        System.out.printf("%10d %10d %10d  %s.%s%s%n", mt.getCodeFullLength(), ssaTimes[i] / counted / 1000, ssauTimes[i] / counted / 1000,
+                          mt.getClassStruct().qualifiedName, mt.getName(), mt.getDescriptor());
+        ssaTotal += ssaTimes[i];
+        ssauTotal += ssauTimes[i];
+      }
+      System.out.printf("%10s %10d %10d  total per round%n", "", ssaTotal / counted / 1000, ssauTotal / counted / 1000);
+    }
+    finally {
+      engine.clearContext();
+    }
+  }
+
+  private static RootStatement buildStatements(StructMethod mt) throws IOException {
+    MethodDescriptor md = MethodDescriptor.parseDescriptor(mt, null);
+    VarProcessor varProc = new VarProcessor(mt, md);
+    DecompilerContext.startMethod(varProc);
+    return MethodProcessor.buildStatements(mt, md, varProc);
+  }
+}
@@ -0,0 +1,179 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package org.jetbrains.java.decompiler;
+
+import org.jetbrains.java.decompiler.util.InterpreterUtil;
+import org.jetbrains.java.decompiler.util.ZipArchiveReader;
+import org.jetbrains.java.decompiler.util.ZipArchiveWriter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+public class ZipArchiveTest {
+  private static final int FLAG_DATA_DESCRIPTOR = 0x8;
+
+  @Rule public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void testStoredAndDeflatedEntries() throws IOException {
+    Map<String, byte[]> entries = new LinkedHashMap<>();
+    entries.put("dir/", new byte[0]);
+    entries.put("dir/stored.bin", randomBytes(5000));
+    entries.put("dir/deflated.txt", repeat("deflated text, ", 1000));
+    entries.put("empty.txt", new byte[0]);
+    entries.put("n\u00e4me.txt", repeat("utf-8 name", 10));
+
+    File source = temp.newFile("source.zip");
+    try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(source))) {
+      for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+        ZipEntry zipEntry = new ZipEntry(entry.getKey());
+        if (entry.getKey().endsWith(".bin") || entry.getKey().endsWith("/")) {
+          zipEntry.setMethod(ZipEntry.STORED);
+          zipEntry.setSize(entry.getValue().length);
+          zipEntry.setCrc(crc(entry.getValue()));
+        }
+        out.putNextEntry(zipEntry);
+        out.write(entry.getValue());
+        out.closeEntry();
+      }
+    }
+
+    File target = temp.newFile("target.zip");
+    try (ZipArchiveReader reader = new ZipArchiveReader(source); ZipArchiveWriter writer = new ZipArchiveWriter(target)) {
+      assertEquals(entries.size(), reader.getEntries().size());
+
+      ZipArchiveReader.Entry stored = reader.getEntry("dir/stored.bin");
+      assertEquals(ZipEntry.STORED, stored.method);
+      assertEquals(0, stored.flags & FLAG_DATA_DESCRIPTOR);
+
+      // sizes and CRC of deflated entries written by ZipOutputStream follow their data
+      ZipArchiveReader.Entry deflated = reader.getEntry("dir/deflated.txt");
+      assertEquals(ZipEntry.DEFLATED, deflated.method);
+      assertNotEquals(0, deflated.flags & FLAG_DATA_DESCRIPTOR);
+      assertTrue(deflated.compressedSize < deflated.size);
+
+      for (ZipArchiveReader.Entry entry : reader.getEntries()) {
+        writer.writeRawEntry(entry, reader.readRawData(entry));
+      }
+      writer.writeDirectory("new/");
+      writer.writeEntry("new/written.txt", repeat("written text, ", 100));
+    }
+    entries.put("new/", new byte[0]);
+    entries.put("new/written.txt", repeat("written text, ", 100));
+
+    assertReadBack(target, entries);
+
+    try (ZipArchiveReader reader = new ZipArchiveReader(target)) {
+      assertEquals(entries.size(), reader.getEntries().size());
+      for (ZipArchiveReader.Entry entry : reader.getEntries()) {
+        assertEquals(0, entry.flags & FLAG_DATA_DESCRIPTOR);
+        assertEquals(entries.get(entry.name).length, entry.size);
+      }
+      assertEquals(ZipEntry.STORED, reader.getEntry("dir/stored.bin").method);
+      assertEquals(ZipEntry.DEFLATED, reader.getEntry("dir/deflated.txt").method);
+    }
+  }
+
+  @Test
+  public void testZip64() throws IOException {
+    // more entries than the end record can count
+    int count = 0x10000 + 10;
+
+    File source = temp.newFile("source.zip");
+    try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(source))) {
+      for (int i = 0; i < count; i++) {
+        out.putNextEntry(new ZipEntry("entry" + i + ".txt"));
+        out.write(("entry " + i).getBytes(StandardCharsets.UTF_8));
+        out.closeEntry();
+      }
+    }
+
+    File target = temp.newFile("target.zip");
+    try (ZipArchiveReader reader = new ZipArchiveReader(source); ZipArchiveWriter writer = new ZipArchiveWriter(target)) {
+      assertEquals(count, reader.getEntries().size());
+      for (ZipArchiveReader.Entry entry : reader.getEntries()) {
+        writer.writeRawEntry(entry, reader.readRawData(entry));
+      }
+    }
+
+    try (ZipFile zip = new ZipFile(target)) {
+      assertEquals(count, zip.size());
+      for (int i : new int[]{0, 0xFFFF, count - 1}) {
+        ZipEntry entry = zip.getEntry("entry" + i + ".txt");
+        assertNotNull(entry);
+        assertEquals("entry " + i, new String(InterpreterUtil.getBytes(zip, entry), StandardCharsets.UTF_8));
+      }
+    }
+
+    try (ZipArchiveReader reader = new ZipArchiveReader(target)) {
+      assertEquals(count, reader.getEntries().size());
+      assertNotNull(reader.getEntry("entry" + (count - 1) + ".txt"));
+    }
+  }
+
+  // reads the archive through both its central directory and its local headers
+  private static void assertReadBack(File archive, Map<String, byte[]> expected) throws IOException {
+    try (ZipFile zip = new ZipFile(archive)) {
+      assertEquals(expected.size(), zip.size());
+      for (Map.Entry<String, byte[]> entry : expected.entrySet()) {
+        ZipEntry zipEntry = zip.getEntry(entry.getKey());
+        assertNotNull(entry.getKey(), zipEntry);
+        assertEquals(entry.getKey(), crc(entry.getValue()), zipEntry.getCrc());
+        assertArrayEquals(entry.getKey(), entry.getValue(), InterpreterUtil.getBytes(zip, zipEntry));
+      }
+    }
+
+    int count = 0;
+    try (ZipInputStream in = new ZipInputStream(new FileInputStream(archive))) {
+      ZipEntry zipEntry;
+      while ((zipEntry = in.getNextEntry()) != null) {
+        assertArrayEquals(zipEntry.getName(), expected.get(zipEntry.getName()), readAll(in));
+        count++;
+      }
+    }
+    assertEquals(expected.size(), count);
+  }
+
+  private static byte[] readAll(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    InterpreterUtil.copyStream(in, out);
+    return out.toByteArray();
+  }
+
+  private static byte[] randomBytes(int length) {
+    byte[] bytes = new byte[length];
+    new Random(42).nextBytes(bytes);
+    return bytes;
+  }
+
+  private static byte[] repeat(String text, int times) {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < times; i++) {
+      builder.append(text);
+    }
+    return builder.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static long crc(byte[] data) {
+    CRC32 crc = new CRC32();
+    crc.update(data);
+    return crc.getValue();
+  }
+}